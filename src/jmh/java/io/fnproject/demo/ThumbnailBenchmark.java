@@ -0,0 +1,313 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the hot path of the function: decode, scale and encode. The
+ * source images are generated at setup, in every supported format and in
+ * several resolutions, so the benchmark does not need any external file.
+ * Each operation is measured both as throughput and as sampled time, which
+ * reports the latency percentiles, and the allocation rate is reported when
+ * the benchmark runs with the gc profiler, as it does in the benchmarks profile.
+ * The parameters are split among the states, so that each benchmark runs only
+ * the combinations of the parameters it depends on.
+ *
+ * @version 1.4 17 Oct 2026
+ * @author PaoloB
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx256m", "-Djava.awt.headless=true" })
+public class ThumbnailBenchmark {
+
+    /**
+     * The original image, encoded in one of the formats of the function and decoded in full.
+     */
+    @State(Scope.Benchmark)
+    public static class Original {
+
+        // The formats accepted by the function, without the aliases jpeg and tif of the same codecs
+        @Param({ "bmp", "gif", "jpg", "png", "tiff", "wbmp" })
+        public String format;
+
+        @Param({ "640x480", "1920x1080", "4000x3000" })
+        public String resolution;
+
+        byte[] source;
+        BufferedImage image;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+
+            String[] size = resolution.split("x");
+            BufferedImage generated = syntheticImage(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(encodable(generated, format), format, out)) {
+                throw new IOException("No writer available for format " + format);
+            }
+            source = out.toByteArray();
+            image = ImageIO.read(new ByteArrayInputStream(source));
+
+        }
+
+    }
+
+    /**
+     * The size of the thumbnail of the original.
+     */
+    @State(Scope.Benchmark)
+    public static class Target {
+
+        @Param({ "0.1", "0.25", "0.5" })
+        public double scalingFactor;
+
+        Dimension size;
+
+        @Setup(Level.Trial)
+        public void setUp(Original original) {
+            size = Rendition.ofScalingFactor(scalingFactor, "scaled-", original.format).targetSize(new Dimension(original.image.getWidth(), original.image.getHeight()));
+        }
+
+    }
+
+    /**
+     * The resampler used to scale the original.
+     */
+    @State(Scope.Benchmark)
+    public static class Filter {
+
+        @Param({ "box", "java2d" })
+        public String resamplingFilter;
+
+        Resampler resampler;
+        ExecutorService bandExecutor;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            // The default SCALE_THREADS of the function
+            bandExecutor = Executors.newFixedThreadPool(2);
+            resampler = Resampler.forName(resamplingFilter, bandExecutor, 2);
+
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            bandExecutor.shutdownNow();
+        }
+
+    }
+
+    /**
+     * The thumbnail to be encoded, scaled with the default filter of the function.
+     */
+    @State(Scope.Benchmark)
+    public static class Thumbnail {
+
+        BufferedImage image;
+
+        @Setup(Level.Trial)
+        public void setUp(Original original, Target target) {
+            image = Resampler.forName("box").resize(original.image, target.size.width, target.size.height);
+        }
+
+    }
+
+    /**
+     * The decoder and the encoders of the function.
+     */
+    @State(Scope.Benchmark)
+    public static class Codecs {
+
+        DecodePlanner decodePlanner;
+        ChunkPool chunkPool;
+        EncoderPool encoderPool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+
+            decodePlanner = new DecodePlanner(64L * 1024 * 1024);
+            chunkPool = new ChunkPool(256 * 1024, 64);
+            // The default encoder settings of the function
+            encoderPool = new EncoderPool(0.75f, false, false, "420", 4, "none", 1);
+
+        }
+
+        /**
+         * Encode an image with the pooled encoders into the pooled buffers used by the upload.
+         */
+        long write(BufferedImage image, String format) throws IOException {
+
+            try (ChunkedImageOutputStream out = new ChunkedImageOutputStream(chunkPool)) {
+                encoderPool.write(image, format, out);
+                return out.length();
+            }
+
+        }
+
+    }
+
+    /**
+     * Full decode of the original, as done by ImageIO.read.
+     */
+    @Benchmark
+    public BufferedImage decode(Original original) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(original.source));
+    }
+
+    /**
+     * Decode of the original subsampled towards the size of the thumbnail, as done by the function.
+     */
+    @Benchmark
+    public DecodedImage decodeSubsampled(Original original, Target target, Codecs codecs) throws IOException {
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(original.source))) {
+            return codecs.decodePlanner.decode(iis, dimension -> target.size);
+        }
+
+    }
+
+    @Benchmark
+    public BufferedImage scale(Original original, Target target, Filter filter) {
+        return filter.resampler.resize(original.image, target.size.width, target.size.height);
+    }
+
+    @Benchmark
+    public long encode(Original original, Thumbnail thumbnail, Codecs codecs) throws IOException {
+        return codecs.write(thumbnail.image, original.format);
+    }
+
+    /**
+     * The whole path of a thumbnail, from the bytes of the original to the bytes of the thumbnail.
+     */
+    @Benchmark
+    public long pipeline(Original original, Target target, Filter filter, Codecs codecs) throws IOException {
+
+        DecodedImage decoded = decodeSubsampled(original, target, codecs);
+        return codecs.write(filter.resampler.resize(decoded.getImage(), target.size.width, target.size.height), original.format);
+
+    }
+
+    /**
+     * Convert the original to a type the writer of the format can encode, WBMP for example only accepts bilevel
+     * images. The thumbnails are adapted to the format by the encoder pool, as in the function.
+     */
+    private static BufferedImage encodable(BufferedImage image, String format) {
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext() || writers.next().getOriginatingProvider().canEncodeImage(image)) {
+            return image;
+        }
+        BufferedImage bilevel = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D graphics2D = bilevel.createGraphics();
+        graphics2D.drawImage(image, 0, 0, null);
+        graphics2D.dispose();
+        return bilevel;
+
+    }
+
+    /**
+     * Generate a photo-like image: smooth gradients, sharp edges and some noise, so that neither the
+     * resamplers nor the codecs work on an unrealistically uniform content.
+     */
+    private static BufferedImage syntheticImage(int width, int height) {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics2D = image.createGraphics();
+        graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics2D.setPaint(new GradientPaint(0, 0, new Color(30, 90, 160), width, height, new Color(240, 200, 120)));
+        graphics2D.fillRect(0, 0, width, height);
+
+        Random random = new Random(42);
+        graphics2D.setStroke(new BasicStroke(Math.max(1, width / 400f)));
+        for (int i = 0; i < 200; i++) {
+            graphics2D.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 160));
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int w = random.nextInt(width / 4) + 1;
+            int h = random.nextInt(height / 4) + 1;
+            if (i % 2 == 0) {
+                graphics2D.fillOval(x, y, w, h);
+            } else {
+                graphics2D.drawRect(x, y, w, h);
+            }
+        }
+        graphics2D.dispose();
+
+        // Sensor-like noise
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = image.getRGB(x, y);
+                int noise = random.nextInt(9) - 4;
+                int r = Math.min(255, Math.max(0, ((rgb >> 16) & 0xff) + noise));
+                int g = Math.min(255, Math.max(0, ((rgb >> 8) & 0xff) + noise));
+                int b = Math.min(255, Math.max(0, (rgb & 0xff) + noise));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fnproject.fn.testing.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end load test of the function, run by the loadtest Maven profile. Each of the concurrent
+ * workers is a function container: it runs its share of the events through its own FnTestingRule,
+ * one invocation after the other, against a local stand-in of Object Storage. The events upload
+ * images of a mix of sizes and formats, and the test reports throughput, latency percentiles and
+ * heap usage, failing when they are worse than the configured gates.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class ThumbnailLoadTest {
+
+    // Parameters of the load, as system properties
+    private static final int INVOCATIONS = Integer.getInteger("loadtest.invocations", 200);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 4);
+    private static final int WARM_UP = Integer.getInteger("loadtest.warmUp", 5);
+    private static final String SIZES = System.getProperty("loadtest.sizes", "640x480,1920x1080,4000x3000");
+    private static final String FORMATS = System.getProperty("loadtest.formats", "jpg,png,gif,bmp");
+    private static final long STORAGE_LATENCY_MILLIS = Long.getLong("loadtest.storageLatencyMillis", 0);
+    private static final long SEED = Long.getLong("loadtest.seed", 42);
+    private static final String RESULT_FILE = System.getProperty("loadtest.resultFile", "target/loadtest-result.json");
+
+    // Regression gates, 0 to disable them
+    private static final double MIN_THROUGHPUT = Double.parseDouble(System.getProperty("loadtest.minThroughput", "0"));
+    private static final double MAX_P95_MILLIS = Double.parseDouble(System.getProperty("loadtest.maxP95Millis", "0"));
+    private static final long MAX_HEAP_MB = Long.getLong("loadtest.maxHeapMb", 0);
+
+    // The system properties loadtest.config.KEY are passed to the function as configuration KEY
+    private static final String CONFIG_PREFIX = "loadtest.config.";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private ObjectStorageStandIn objectStorage;
+    private final AtomicLong heapPeak = new AtomicLong();
+    private ScheduledExecutorService heapSampler;
+
+    @Before
+    public void setUp() throws IOException {
+
+        objectStorage = new ObjectStorageStandIn();
+        objectStorage.setLatencyMillis(STORAGE_LATENCY_MILLIS);
+        heapSampler = Executors.newSingleThreadScheduledExecutor(ThumbnailGeneratorFunction.daemonThreadFactory("heap"));
+
+    }
+
+    @After
+    public void tearDown() {
+
+        heapSampler.shutdownNow();
+        objectStorage.close();
+
+    }
+
+    @Test
+    public void shouldSustainLoad() throws Exception {
+
+        SyntheticEvents events = new SyntheticEvents(objectStorage.getStorage(), "imageIn", SIZES, FORMATS, SEED);
+        int perWorker = (INVOCATIONS + CONCURRENCY - 1) / CONCURRENCY;
+
+        // The events and their images are prepared before the clock starts
+        List<List<SyntheticEvents.Event>> workload = new ArrayList<>();
+        for (int worker = 0; worker < CONCURRENCY; worker++) {
+            List<SyntheticEvents.Event> workerEvents = new ArrayList<>();
+            for (int i = 0; i < WARM_UP + perWorker; i++) {
+                workerEvents.add(events.next());
+            }
+            workload.add(workerEvents);
+        }
+
+        heapSampler.scheduleAtFixedRate(() -> heapPeak.accumulateAndGet(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max),
+                                        0, 20, TimeUnit.MILLISECONDS);
+
+        // FnTestingRule redirects the standard streams of the function, they are restored when all the workers are finished
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ExecutorService workers = Executors.newFixedThreadPool(CONCURRENCY);
+        List<Future<List<Sample>>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (List<SyntheticEvents.Event> workerEvents : workload) {
+                futures.add(workers.submit(() -> runContainer(workerEvents)));
+            }
+            List<List<Sample>> samples = new ArrayList<>();
+            for (Future<List<Sample>> future : futures) {
+                samples.add(future.get());
+            }
+            long wallNanos = System.nanoTime() - start;
+            System.setOut(out);
+            System.setErr(err);
+            report(samples, wallNanos);
+        } finally {
+            workers.shutdownNow();
+            System.setOut(out);
+            System.setErr(err);
+        }
+
+    }
+
+    /**
+     * Run the events of a worker in a single function container, one invocation after the other.
+     */
+    private List<Sample> runContainer(List<SyntheticEvents.Event> workerEvents) {
+
+        FnTestingRule testing = FnTestingRule.createDefault();
+        objectStorage.configure(testing);
+        testing.setConfig("BUCKET_IN", "imageIn");
+        testing.setConfig("BUCKET_OUT", "imageOut");
+        testing.setConfig("METRICS_IN_RESPONSE", "true");
+        System.getProperties().stringPropertyNames().stream()
+              .filter(name -> name.startsWith(CONFIG_PREFIX))
+              .forEach(name -> testing.setConfig(name.substring(CONFIG_PREFIX.length()), System.getProperty(name)));
+
+        for (SyntheticEvents.Event event : workerEvents) {
+            testing.givenEvent().withBody(event.getPayload()).enqueue();
+        }
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        List<FnResult> results = testing.getResults();
+        List<Sample> samples = new ArrayList<>();
+        for (int i = WARM_UP; i < workerEvents.size(); i++) {
+            samples.add(Sample.of(workerEvents.get(i).getKind(), i < results.size() ? results.get(i).getBodyAsString() : null));
+        }
+        return samples;
+
+    }
+
+    private void report(List<List<Sample>> samples, long wallNanos) throws IOException {
+
+        List<Double> latencies = new ArrayList<>();
+        Map<String, List<Double>> latenciesByKind = new TreeMap<>();
+        long errors = 0;
+        long invocationHeapPeak = 0;
+        // Each worker is a container serving one invocation at a time, so the throughput is the sum of their rates
+        double throughput = 0;
+        for (List<Sample> workerSamples : samples) {
+            double workerMillis = 0;
+            for (Sample sample : workerSamples) {
+                if (!sample.succeeded) {
+                    errors++;
+                    continue;
+                }
+                latencies.add(sample.durationMillis);
+                latenciesByKind.computeIfAbsent(sample.kind, k -> new ArrayList<>()).add(sample.durationMillis);
+                invocationHeapPeak = Math.max(invocationHeapPeak, sample.heapPeakBytes);
+                workerMillis += sample.durationMillis;
+            }
+            if (workerMillis > 0) {
+                throughput += (workerSamples.size() - countErrors(workerSamples)) * 1000 / workerMillis;
+            }
+        }
+
+        ObjectNode result = mapper.createObjectNode();
+        ObjectNode parameters = result.putObject("parameters");
+        parameters.put("invocations", latencies.size() + errors);
+        parameters.put("concurrency", CONCURRENCY);
+        parameters.put("warmUp", WARM_UP);
+        parameters.put("sizes", SIZES);
+        parameters.put("formats", FORMATS);
+        parameters.put("storageLatencyMillis", STORAGE_LATENCY_MILLIS);
+        result.put("errors", errors);
+        result.put("throughputPerSecond", throughput);
+        result.put("wallClockSeconds", wallNanos / 1e9);
+        result.put("storageRequests", objectStorage.getRequests());
+        result.set("latencyMs", percentiles(latencies));
+        ObjectNode byKind = result.putObject("latencyMsByKind");
+        latenciesByKind.forEach((kind, values) -> byKind.set(kind, percentiles(values)));
+        result.put("heapPeakBytes", heapPeak.get());
+        result.put("invocationHeapPeakBytes", invocationHeapPeak);
+
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+        File resultFile = new File(RESULT_FILE);
+        if (resultFile.getParentFile() != null) {
+            resultFile.getParentFile().mkdirs();
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(resultFile, result);
+
+        assertEquals("Failed invocations", 0, errors);
+        if (MIN_THROUGHPUT > 0) {
+            assertTrue("Throughput " + throughput + "/s below " + MIN_THROUGHPUT + "/s", throughput >= MIN_THROUGHPUT);
+        }
+        if (MAX_P95_MILLIS > 0) {
+            double p95 = result.path("latencyMs").path("p95").asDouble();
+            assertTrue("95th percentile " + p95 + " ms above " + MAX_P95_MILLIS + " ms", p95 <= MAX_P95_MILLIS);
+        }
+        if (MAX_HEAP_MB > 0) {
+            assertTrue("Heap peak " + heapPeak.get() / (1024 * 1024) + " MB above " + MAX_HEAP_MB + " MB", heapPeak.get() <= MAX_HEAP_MB * 1024 * 1024);
+        }
+
+    }
+
+    private static long countErrors(List<Sample> samples) {
+        return samples.stream().filter(sample -> !sample.succeeded).count();
+    }
+
+    private static ObjectNode percentiles(List<Double> values) {
+
+        Double[] sorted = values.toArray(new Double[0]);
+        Arrays.sort(sorted);
+        ObjectNode percentiles = mapper.createObjectNode();
+        percentiles.put("count", sorted.length);
+        if (sorted.length > 0) {
+            percentiles.put("p50", percentile(sorted, 50));
+            percentiles.put("p95", percentile(sorted, 95));
+            percentiles.put("p99", percentile(sorted, 99));
+            percentiles.put("max", sorted[sorted.length - 1]);
+        }
+        return percentiles;
+
+    }
+
+    private static double percentile(Double[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100 * sorted.length) - 1)];
+    }
+
+    /**
+     * Outcome of an invocation, from the metrics in its response.
+     */
+    private static class Sample {
+
+        private final String kind;
+        private final boolean succeeded;
+        private final double durationMillis;
+        private final long heapPeakBytes;
+
+        private Sample(String kind, boolean succeeded, double durationMillis, long heapPeakBytes) {
+            this.kind = kind;
+            this.succeeded = succeeded;
+            this.durationMillis = durationMillis;
+            this.heapPeakBytes = heapPeakBytes;
+        }
+
+        static Sample of(String kind, String response) {
+
+            try {
+                JsonNode metrics = mapper.readTree(response).path("metrics");
+                boolean succeeded = metrics.path("processed").asInt() == 1;
+                return new Sample(kind, succeeded, metrics.path("durationMs").asDouble(), metrics.path("heapPeakBytes").asLong());
+            } catch (Exception e) {
+                // Not a JSON document, the invocation failed before producing its metrics
+                return new Sample(kind, false, 0, 0);
+            }
+
+        }
+
+    }
+
+}
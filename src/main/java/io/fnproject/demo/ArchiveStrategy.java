@@ -0,0 +1,68 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+/**
+ * Ways to archive an original image of the input bucket once its renditions are generated.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public enum ArchiveStrategy {
+
+    /** Server-side copy to the output bucket, polling its work request, then delete of the original. */
+    COPY,
+
+    /** Upload to the output bucket of the content already downloaded to decode the original, then delete of the original. */
+    REUPLOAD,
+
+    /** Rename of the original within its bucket, when the input and the output buckets are the same. */
+    RENAME,
+
+    /** The original is left in the input bucket. */
+    SKIP,
+
+    /** Rename when the input and the output buckets are the same, otherwise re-upload of the small originals and copy of the others. */
+    AUTO;
+
+    /**
+     * Get a strategy by name.
+     *
+     * @param name the name of the strategy, case insensitive
+     * @return the strategy
+     */
+    public static ArchiveStrategy forName(String name) {
+
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown archive strategy " + name + ", please choose one among: copy, reupload, rename, skip, auto", e);
+        }
+
+    }
+
+}
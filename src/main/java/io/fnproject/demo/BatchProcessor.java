@@ -0,0 +1,195 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process many objects in a single invocation, with a bounded number of
+ * objects in progress at the same time and within a time budget. The objects
+ * that cannot be started before the end of the budget are reported as
+ * deferred, and a backfill returns a continuation token to resume from them.
+ *
+ * @version 1.1 17 Oct 2026
+ * @author PaoloB
+ */
+public class BatchProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchProcessor.class);
+
+    /**
+     * The processing applied to each object of the batch.
+     */
+    @FunctionalInterface
+    public interface ObjectProcessor {
+        ProcessingResult process(String bucket, String objectName) throws Exception;
+    }
+
+    private final StorageService storage;
+    private final ExecutorService executor;
+    private final ObjectProcessor processor;
+    private final long timeBudgetNanos;
+    private final int pageSize;
+
+    /**
+     * Create a batch processor.
+     *
+     * @param storage         storage used to list the objects of a backfill
+     * @param executor        executor that runs the processing, its size limits the concurrency
+     * @param processor       the processing applied to each object
+     * @param timeBudgetNanos time after which no more objects are started, in nanoseconds
+     * @param pageSize        number of objects listed at a time by a backfill
+     */
+    public BatchProcessor(StorageService storage, ExecutorService executor, ObjectProcessor processor, long timeBudgetNanos, int pageSize) {
+        this.storage = storage;
+        this.executor = executor;
+        this.processor = processor;
+        this.timeBudgetNanos = timeBudgetNanos;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Process a list of objects of the same bucket.
+     *
+     * @param bucket      name of the bucket
+     * @param objectNames names of the objects
+     * @return the result of each object
+     */
+    public BatchResponse processObjects(String bucket, List<String> objectNames) {
+
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        BatchResponse response = new BatchResponse();
+        for (ProcessingResult result : processAll(bucket, objectNames, deadline)) {
+            response.add(result);
+        }
+        return response;
+
+    }
+
+    /**
+     * Process the objects of a bucket, page by page, until all of them are done or the time budget is over.
+     *
+     * @param command the backfill command
+     * @param filter  objects to be processed, the others are reported as skipped
+     * @return the result of each object and the continuation token if the backfill is not finished
+     * @throws Exception if the objects cannot be listed
+     */
+    public BatchResponse backfill(BackfillCommand command, Predicate<String> filter) throws Exception {
+
+        long deadline = System.nanoTime() + timeBudgetNanos;
+        BatchResponse response = new BatchResponse();
+        String start = command.getStart();
+        int remaining = command.getLimit() == null ? Integer.MAX_VALUE : command.getLimit();
+
+        while (true) {
+
+            // Stop listing when the budget is over, the next invocation restarts from here
+            if (remaining <= 0 || System.nanoTime() - deadline >= 0) {
+                response.setContinuationToken(start);
+                break;
+            }
+
+            ObjectListing page = storage.listObjects(command.getBucket(), command.getPrefix(), start, Math.min(pageSize, remaining));
+            remaining -= page.getObjectNames().size();
+
+            List<String> objectNames = new ArrayList<>();
+            for (String objectName : page.getObjectNames()) {
+                if (filter.test(objectName)) {
+                    objectNames.add(objectName);
+                } else {
+                    response.add(ProcessingResult.skipped(objectName, "Filtered out"));
+                }
+            }
+
+            // The page is in lexicographical order, the backfill resumes from the first object not started
+            String firstDeferred = null;
+            for (ProcessingResult result : processAll(command.getBucket(), objectNames, deadline)) {
+                response.add(result);
+                if (firstDeferred == null && result.getStatus() == ProcessingResult.Status.DEFERRED) {
+                    firstDeferred = result.getObjectName();
+                }
+            }
+            if (firstDeferred != null) {
+                response.setContinuationToken(firstDeferred);
+                break;
+            }
+
+            start = page.getNextStartWith();
+            if (start == null) {
+                break;
+            }
+
+        }
+
+        logger.info("Backfill of bucket {}: {} processed, {} skipped, {} failed, {} deferred, {} rejected, continuation token {}",
+                    command.getBucket(), response.getProcessed(), response.getSkipped(), response.getFailed(), response.getDeferred(),
+                    response.getRejected(), response.getContinuationToken());
+        return response;
+
+    }
+
+    private List<ProcessingResult> processAll(String bucket, List<String> objectNames, long deadline) {
+
+        List<Future<ProcessingResult>> futures = new ArrayList<>();
+        for (String objectName : objectNames) {
+            futures.add(executor.submit(() -> {
+                if (System.nanoTime() - deadline >= 0) {
+                    return ProcessingResult.deferred(objectName);
+                }
+                try {
+                    return processor.process(bucket, objectName);
+                } catch (Exception e) {
+                    logger.error("Error processing file {}: {}", objectName, e.getMessage());
+                    return ProcessingResult.failed(objectName, e.getMessage());
+                }
+            }));
+        }
+
+        List<ProcessingResult> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(ProcessingResult.failed(objectNames.get(i), "Interrupted"));
+            } catch (ExecutionException e) {
+                results.add(ProcessingResult.failed(objectNames.get(i), e.getCause().getMessage()));
+            }
+        }
+        return results;
+
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response of the function to a batch of events or to a backfill command.
+ *
+ * @version 1.2 17 Oct 2026
+ * @author PaoloB
+ */
+public class BatchResponse {
+    private final List<ProcessingResult> results = new ArrayList<>();
+    private int processed;
+    private int skipped;
+    private int failed;
+    private int deferred;
+    private int rejected;
+    private String continuationToken;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private JsonNode metrics;
+
+    /**
+     * Add the result of an object to the response.
+     *
+     * @param result the result of the processing of the object
+     */
+    public void add(ProcessingResult result) {
+
+        results.add(result);
+        switch (result.getStatus()) {
+            case PROCESSED:
+                processed++;
+                break;
+            case SKIPPED:
+                skipped++;
+                break;
+            case FAILED:
+                failed++;
+                break;
+            case REJECTED:
+                rejected++;
+                break;
+            default:
+                deferred++;
+                break;
+        }
+
+    }
+
+    public List<ProcessingResult> getResults() {
+        return this.results;
+    }
+
+    public int getProcessed() {
+        return this.processed;
+    }
+
+    public int getSkipped() {
+        return this.skipped;
+    }
+
+    public int getFailed() {
+        return this.failed;
+    }
+
+    public int getDeferred() {
+        return this.deferred;
+    }
+
+    public int getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * Get the token to resume a backfill, to be sent as start of the next command.
+     *
+     * @return the continuation token, or null if there is nothing left to process
+     */
+    public String getContinuationToken() {
+        return this.continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
+    /**
+     * Get the metrics of the invocation, included only when METRICS_IN_RESPONSE is true.
+     *
+     * @return the metrics, or null if they are not part of the response
+     */
+    public JsonNode getMetrics() {
+        return this.metrics;
+    }
+
+    public void setMetrics(JsonNode metrics) {
+        this.metrics = metrics;
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * Image input stream that reads an array of bytes in place. Unlike the streams
+ * created by ImageIO, which copy the input into a cache while reading it, the
+ * content is read directly from the array, that must not be modified while
+ * the stream is in use.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class ByteArrayImageInputStream extends ImageInputStreamImpl {
+
+    private final byte[] content;
+
+    /**
+     * Create a stream on the whole array.
+     *
+     * @param content the content to be read
+     */
+    public ByteArrayImageInputStream(byte[] content) {
+        this.content = Objects.requireNonNull(content);
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= content.length) {
+            return -1;
+        }
+        return content[(int) streamPos++] & 0xff;
+
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        checkClosed();
+        Objects.checkFromIndexSize(off, len, b.length);
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= content.length) {
+            return -1;
+        }
+        int count = (int) Math.min(len, content.length - streamPos);
+        System.arraycopy(content, (int) streamPos, b, off, count);
+        streamPos += count;
+        return count;
+
+    }
+
+    @Override
+    public long length() {
+        return content.length;
+    }
+
+    @Override
+    public boolean isCached() {
+        return true;
+    }
+
+    @Override
+    public boolean isCachedMemory() {
+        return true;
+    }
+
+}
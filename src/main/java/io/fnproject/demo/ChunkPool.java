@@ -0,0 +1,99 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of fixed size byte arrays used to buffer the encoded images before the
+ * upload. The chunks are reused across the invocations served by the container,
+ * so encoding a thumbnail does not allocate and discard a new buffer each time.
+ * At most a bounded number of idle chunks is retained, the others are left to
+ * the garbage collector.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class ChunkPool {
+
+    private final int chunkSize;
+    private final BlockingQueue<byte[]> idleChunks;
+
+    /**
+     * Create a pool of chunks.
+     *
+     * @param chunkSize     size of each chunk in bytes
+     * @param maxIdleChunks maximum number of idle chunks retained by the pool
+     */
+    public ChunkPool(int chunkSize, int maxIdleChunks) {
+
+        if (chunkSize <= 0 || maxIdleChunks <= 0) {
+            throw new IllegalArgumentException("Invalid chunk pool: chunk size " + chunkSize + ", idle chunks " + maxIdleChunks);
+        }
+        this.chunkSize = chunkSize;
+        this.idleChunks = new ArrayBlockingQueue<>(maxIdleChunks);
+
+    }
+
+    /**
+     * Get the size of the chunks of the pool.
+     *
+     * @return the size of each chunk in bytes
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Take an idle chunk, or allocate a new one if none is available.
+     * The content of the chunk is undefined.
+     *
+     * @return a chunk of getChunkSize() bytes
+     */
+    public byte[] acquire() {
+
+        byte[] chunk = idleChunks.poll();
+        return chunk == null ? new byte[chunkSize] : chunk;
+
+    }
+
+    /**
+     * Give a chunk back to the pool. The chunk must not be used after it has been released.
+     *
+     * @param chunk the chunk to release
+     */
+    public void release(byte[] chunk) {
+
+        // When the pool is full the chunk is simply dropped
+        if (chunk != null && chunk.length == chunkSize) {
+            idleChunks.offer(chunk);
+        }
+
+    }
+
+}
@@ -0,0 +1,339 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * Seekable image output stream that keeps the encoded bytes in chunks taken
+ * from a {@link ChunkPool}, without the temporary file or the extra copy of the
+ * streams created by ImageIO. The writers can seek back and patch the bytes
+ * not flushed yet, while the bytes before the flushed position can be detached
+ * and uploaded as soon as the writer declares that it will not touch them again.
+ *
+ * @version 1.1 17 Oct 2026
+ * @author PaoloB
+ */
+public class ChunkedImageOutputStream extends ImageOutputStreamImpl {
+
+    /**
+     * Notified each time the writer moves forward the flushed position.
+     */
+    @FunctionalInterface
+    public interface FlushListener {
+        void flushed(long flushedPosition) throws IOException;
+    }
+
+    private final ChunkPool pool;
+    private final int chunkSize;
+    private final List<byte[]> chunks = new ArrayList<>();
+    private long length;
+    private FlushListener flushListener;
+
+    /**
+     * Create an empty stream.
+     *
+     * @param pool pool that provides the chunks
+     */
+    public ChunkedImageOutputStream(ChunkPool pool) {
+        this.pool = pool;
+        this.chunkSize = pool.getChunkSize();
+    }
+
+    /**
+     * Set the listener notified when the flushed position moves forward.
+     *
+     * @param flushListener the listener, may be null
+     */
+    public void setFlushListener(FlushListener flushListener) {
+        this.flushListener = flushListener;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public boolean isCached() {
+        return true;
+    }
+
+    @Override
+    public boolean isCachedMemory() {
+        return true;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+
+        checkClosed();
+        flushBits();
+        ensureWritable(streamPos + 1);
+        chunks.get((int) (streamPos / chunkSize))[(int) (streamPos % chunkSize)] = (byte) b;
+        streamPos++;
+        length = Math.max(length, streamPos);
+
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        checkClosed();
+        flushBits();
+        ensureWritable(streamPos + len);
+        while (len > 0) {
+            int offsetInChunk = (int) (streamPos % chunkSize);
+            int count = Math.min(len, chunkSize - offsetInChunk);
+            System.arraycopy(b, off, chunks.get((int) (streamPos / chunkSize)), offsetInChunk, count);
+            streamPos += count;
+            off += count;
+            len -= count;
+        }
+        length = Math.max(length, streamPos);
+
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= length) {
+            return -1;
+        }
+        int b = chunks.get((int) (streamPos / chunkSize))[(int) (streamPos % chunkSize)] & 0xff;
+        streamPos++;
+        return b;
+
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+        int total = (int) Math.min(len, length - streamPos);
+        int remaining = total;
+        while (remaining > 0) {
+            int offsetInChunk = (int) (streamPos % chunkSize);
+            int count = Math.min(remaining, chunkSize - offsetInChunk);
+            System.arraycopy(chunks.get((int) (streamPos / chunkSize)), offsetInChunk, b, off, count);
+            streamPos += count;
+            off += count;
+            remaining -= count;
+        }
+        return total;
+
+    }
+
+    @Override
+    public void flushBefore(long pos) throws IOException {
+
+        long previous = flushedPos;
+        super.flushBefore(pos);
+        if (flushListener != null && flushedPos > previous) {
+            flushListener.flushed(flushedPos);
+        }
+
+    }
+
+    /**
+     * Take away from the stream the chunks of a range of bytes that the writer has already flushed,
+     * or of the tail of the stream once the writer has finished. The range must start on a chunk
+     * boundary, and it must also end on a chunk boundary unless it ends at the end of the stream.
+     *
+     * @param from first byte of the range
+     * @param to   end of the range, exclusive
+     * @return the detached range, that must be released when it is no longer needed
+     */
+    public ChunkRange detach(long from, long to) {
+
+        if (from % chunkSize != 0 || (to % chunkSize != 0 && to != length) || from > to || to > length) {
+            throw new IllegalArgumentException("Range not aligned to the chunks: " + from + "-" + to);
+        }
+
+        List<byte[]> detached = new ArrayList<>();
+        for (int i = (int) (from / chunkSize); (long) i * chunkSize < to; i++) {
+            detached.add(chunks.set(i, null));
+        }
+        return new ChunkRange(pool, detached, chunkSize, to - from);
+
+    }
+
+    /**
+     * Close the stream and give back to the pool the chunks that have not been detached.
+     */
+    @Override
+    public void close() throws IOException {
+
+        super.close();
+        for (byte[] chunk : chunks) {
+            pool.release(chunk);
+        }
+        chunks.clear();
+
+    }
+
+    private void ensureWritable(long end) {
+
+        while ((long) chunks.size() * chunkSize < end) {
+            chunks.add(pool.acquire());
+        }
+        // The chunks come from the pool with old content, a gap left by a seek after the end must read as zeros
+        for (long position = length; position < streamPos; ) {
+            int offsetInChunk = (int) (position % chunkSize);
+            int count = (int) Math.min(streamPos - position, chunkSize - offsetInChunk);
+            byte[] chunk = chunks.get((int) (position / chunkSize));
+            Arrays.fill(chunk, offsetInChunk, offsetInChunk + count, (byte) 0);
+            position += count;
+        }
+
+    }
+
+    /**
+     * A range of bytes detached from the stream, uploaded as a single object or as a part.
+     */
+    public static final class ChunkRange {
+
+        private final ChunkPool pool;
+        private final List<byte[]> chunks;
+        private final int chunkSize;
+        private final long length;
+
+        private ChunkRange(ChunkPool pool, List<byte[]> chunks, int chunkSize, long length) {
+            this.pool = pool;
+            this.chunks = chunks;
+            this.chunkSize = chunkSize;
+            this.length = length;
+        }
+
+        /**
+         * Get the number of bytes of the range.
+         *
+         * @return the exact length of the range
+         */
+        public long length() {
+            return length;
+        }
+
+        /**
+         * Open a stream that reads the range without copying it. The stream supports mark and reset,
+         * so the OCI client can retry a request from the chunks instead of buffering a copy of them.
+         *
+         * @return a stream positioned at the start of the range
+         */
+        public InputStream newInputStream() {
+
+            return new InputStream() {
+
+                private long position;
+                private long mark;
+
+                @Override
+                public int read() {
+                    if (position >= length) {
+                        return -1;
+                    }
+                    int b = chunks.get((int) (position / chunkSize))[(int) (position % chunkSize)] & 0xff;
+                    position++;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (position >= length) {
+                        return -1;
+                    }
+                    int offsetInChunk = (int) (position % chunkSize);
+                    int count = (int) Math.min(Math.min(len, chunkSize - offsetInChunk), length - position);
+                    System.arraycopy(chunks.get((int) (position / chunkSize)), offsetInChunk, b, off, count);
+                    position += count;
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return (int) Math.min(Integer.MAX_VALUE, length - position);
+                }
+
+                @Override
+                public long skip(long n) {
+                    long skipped = Math.max(0, Math.min(n, length - position));
+                    position += skipped;
+                    return skipped;
+                }
+
+                @Override
+                public boolean markSupported() {
+                    return true;
+                }
+
+                @Override
+                public synchronized void mark(int readLimit) {
+                    mark = position;
+                }
+
+                @Override
+                public synchronized void reset() {
+                    position = mark;
+                }
+
+            };
+
+        }
+
+        /**
+         * Give the chunks back to the pool. No stream of the range must be used afterwards.
+         */
+        public void release() {
+
+            for (byte[] chunk : chunks) {
+                pool.release(chunk);
+            }
+            chunks.clear();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fnproject.fn.api.RuntimeContext;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Training run of the function, executed when the container image is built to
+ * record the classes loaded by the invocations into an AppCDS archive. It
+ * configures the function with the in-memory storage and processes a few
+ * synthetic images, in color, in gray and with alpha, in every output format
+ * and in the auto format, as a single event and as a batch, so the archive
+ * covers the classes of the whole path except the network calls of the OCI SDK.
+ * The run exits with an error if an invocation fails, so that the image is not
+ * built with an archive of the error path.
+ *
+ * @version 1.3 17 Oct 2026
+ * @author PaoloB
+ */
+public class ColdStartTraining {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColdStartTraining.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String BUCKET_IN = "training-in";
+
+    public static void main(String[] args) throws IOException {
+
+        Map<String, String> configuration = Map.of("STORAGE_BACKEND", "memory",
+                                                   "OCI_REGION", "training",
+                                                   "OCI_NAMESPACE", "training",
+                                                   "BUCKET_IN", BUCKET_IN,
+                                                   "BUCKET_OUT", "training-out",
+                                                   "RENDITIONS", "0.5:bmp-:bmp,0.5:gif-:gif,0.5:jpg-:jpg,0.5:png-:png,0.5:tiff-:tiff,0.5:wbmp-:wbmp,0.5:auto-:auto",
+                                                   "METRICS_IN_RESPONSE", "true");
+        RuntimeContext ctx = (RuntimeContext) Proxy.newProxyInstance(RuntimeContext.class.getClassLoader(),
+                                                                     new Class<?>[] { RuntimeContext.class },
+                                                                     (proxy, method, arguments) -> {
+            switch (method.getName()) {
+                case "getConfigurationByKey":
+                    return Optional.ofNullable(configuration.get((String) arguments[0]));
+                case "getConfiguration":
+                    return configuration;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        ThumbnailGeneratorFunction function = new ThumbnailGeneratorFunction();
+        function.config(ctx);
+
+        InMemoryStorageService storage = InMemoryStorageService.getDefault();
+        storage.putBytes(BUCKET_IN, "training-1.jpg", syntheticImage("jpg", BufferedImage.TYPE_INT_RGB), "image/jpeg");
+        storage.putBytes(BUCKET_IN, "training-2.png", syntheticImage("png", BufferedImage.TYPE_INT_ARGB), "image/png");
+        storage.putBytes(BUCKET_IN, "training-3.jpg", syntheticImage("jpg", BufferedImage.TYPE_BYTE_GRAY), "image/jpeg");
+
+        boolean succeeded = check("single event", function.handleRequest(ctx, event("training-1.jpg")));
+        succeeded &= check("batch", function.handleRequest(ctx, "[" + event("training-2.png") + "," + event("training-3.jpg") + "]"));
+        succeeded &= check("backfill", function.handleRequest(ctx, "{\"backfill\":{\"bucket\":\"training-out\"}}"));
+
+        // The pools of the function use daemon threads, the run ends here and the archive is written at exit
+        storage.clear();
+        if (!succeeded) {
+            System.exit(1);
+        }
+
+    }
+
+    /**
+     * Check the response of an invocation: the error message of the function, or any image failed or
+     * rejected, in the counters of a batch or in the metrics of a single event.
+     */
+    private static boolean check(String invocation, String response) throws IOException {
+
+        if (response.contains(ThumbnailGeneratorFunction.ERRORMSG)) {
+            logger.error("Training invocation {} failed: {}", invocation, response);
+            return false;
+        }
+        JsonNode document = mapper.readTree(response);
+        JsonNode counters = document.has("failed") ? document : document.path("metrics");
+        if (counters.path("failed").asInt(-1) != 0 || counters.path("rejected").asInt(-1) != 0) {
+            logger.error("Training invocation {} did not process all the images: {}", invocation, response);
+            return false;
+        }
+        logger.info("Training invocation {} completed", invocation);
+        return true;
+
+    }
+
+    private static String event(String objectName) {
+
+        return "{\"eventType\":\"com.oraclecloud.objectstorage.createobject\",\"data\":{\"resourceName\":\""
+               + objectName + "\",\"additionalDetails\":{\"bucketName\":\"" + BUCKET_IN + "\"}}}";
+
+    }
+
+    private static byte[] syntheticImage(String format, int type) throws IOException {
+
+        BufferedImage image = new BufferedImage(640, 480, type);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, 640, 480, Color.BLUE));
+        graphics.fillRect(0, 0, 640, 480);
+        graphics.setColor(Color.WHITE);
+        graphics.drawString("thumbgenfn", 280, 240);
+        graphics.dispose();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, format, bytes);
+        return bytes.toByteArray();
+
+    }
+
+}
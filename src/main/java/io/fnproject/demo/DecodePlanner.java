@@ -0,0 +1,256 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decode an image keeping the heap usage proportional to the size of the
+ * thumbnail instead of the size of the original. The final size is evaluated
+ * from the header of the image, then the image is decoded with source
+ * subsampling into a preallocated destination, in horizontal strips when the
+ * reader supports cheap region reads. The decoded images of the images
+ * processed at the same time can share a memory budget, each one reserving
+ * its bytes before the destination is allocated.
+ *
+ * @version 1.2 17 Oct 2026
+ * @author PaoloB
+ */
+public class DecodePlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DecodePlanner.class);
+
+    // The decoded image is kept at least twice the target size, so the resampler has enough samples to filter
+    private static final int OVERSAMPLING = 2;
+
+    // Fraction of the budget that a single strip may use while it is being decoded
+    private static final int STRIP_BUDGET_DIVISOR = 8;
+
+    private final long memoryBudget;
+    private final MemoryBudget sharedBudget;
+    private final LongSupplier maxWaitNanos;
+
+    /**
+     * Create a planner.
+     *
+     * @param memoryBudget maximum number of bytes that the decoded image may use
+     */
+    public DecodePlanner(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        this.sharedBudget = null;
+        this.maxWaitNanos = () -> 0;
+    }
+
+    /**
+     * Create a planner whose decoded images reserve their memory in a shared budget, they must be released once used.
+     *
+     * @param sharedBudget budget shared by the images decoded at the same time
+     * @param maxWaitNanos time left to wait for the memory of an image, evaluated when the image is decoded
+     */
+    public DecodePlanner(MemoryBudget sharedBudget, LongSupplier maxWaitNanos) {
+        this.memoryBudget = sharedBudget.getShareLimit();
+        this.sharedBudget = sharedBudget;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    /**
+     * Decode the first image of a stream.
+     *
+     * @param input      the stream to be decoded, it must be seekable backwards to use the fallback path
+     * @param targetSize function that evaluates the size of the thumbnail from the size of the original
+     * @return the decoded image, at least as large as the thumbnail unless the original is smaller
+     * @throws IOException if the image cannot be decoded or it does not fit in the memory budget
+     */
+    public DecodedImage decode(ImageInputStream input, UnaryOperator<Dimension> targetSize) throws IOException {
+
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            long inputStart = input.getStreamPosition();
+            reader.setInput(input, false, true);
+            return decode(reader, input, inputStart, targetSize);
+        } finally {
+            reader.dispose();
+        }
+
+    }
+
+    private DecodedImage decode(ImageReader reader, ImageInputStream input, long inputStart, UnaryOperator<Dimension> targetSize) throws IOException {
+
+        // Read the size of the original from the header, without decoding the pixels
+        int sourceWidth = reader.getWidth(0);
+        int sourceHeight = reader.getHeight(0);
+        Dimension target = targetSize.apply(new Dimension(sourceWidth, sourceHeight));
+        String formatName = reader.getFormatName().toLowerCase();
+
+        // The first type offered by the reader is always a valid destination
+        ImageTypeSpecifier imageType = reader.getImageTypes(0).next();
+        double bytesPerPixel = bytesPerPixel(imageType.getSampleModel());
+
+        int subsampling = subsampling(sourceWidth, sourceHeight, target, bytesPerPixel);
+        int decodedWidth = ceilDiv(sourceWidth, subsampling);
+        int decodedHeight = ceilDiv(sourceHeight, subsampling);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Decoding {} {}x{} with subsampling {} into {}x{}", formatName, sourceWidth, sourceHeight, subsampling, decodedWidth, decodedHeight);
+        }
+
+        long decodedBytes = decodedSize(sourceWidth, sourceHeight, subsampling, bytesPerPixel);
+        reserve(decodedBytes);
+        try {
+            BufferedImage destination = imageType.createBufferedImage(decodedWidth, decodedHeight);
+            if (reader.isRandomAccessEasy(0)) {
+                readStrips(reader, destination, sourceWidth, sourceHeight, subsampling, bytesPerPixel);
+            } else {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                param.setDestination(destination);
+                reader.read(0, param);
+            }
+            return new DecodedImage(destination, sourceWidth, sourceHeight, subsampling, formatName, sharedBudget, decodedBytes);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // The reader cannot subsample or decode into the requested destination
+            release(decodedBytes);
+            logger.warn("The {} reader cannot subsample ({}), falling back to a full decode", formatName, e.getMessage());
+            return fullDecode(reader, input, inputStart, sourceWidth, sourceHeight, bytesPerPixel, formatName);
+        } catch (IOException | RuntimeException | Error e) {
+            release(decodedBytes);
+            throw e;
+        }
+
+    }
+
+    /**
+     * Decode the image in horizontal strips, each one written in place into the destination.
+     */
+    private void readStrips(ImageReader reader, BufferedImage destination, int sourceWidth, int sourceHeight, int subsampling, double bytesPerPixel) throws IOException {
+
+        // Number of source rows per strip, a multiple of the subsampling so the strips are aligned to the destination rows
+        long stripBudget = Math.max(1, memoryBudget / STRIP_BUDGET_DIVISOR);
+        int stripRows = (int) Math.max(1, Math.min(sourceHeight, stripBudget / Math.max(1, (long) (sourceWidth * bytesPerPixel))));
+        stripRows = Math.max(subsampling, stripRows - stripRows % subsampling);
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setDestination(destination);
+        for (int y = 0; y < sourceHeight; y += stripRows) {
+            param.setSourceRegion(new Rectangle(0, y, sourceWidth, Math.min(stripRows, sourceHeight - y)));
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            param.setDestinationOffset(new Point(0, y / subsampling));
+            reader.read(0, param);
+        }
+
+    }
+
+    /**
+     * Decode the whole image at full resolution, only if it fits in the memory budget.
+     */
+    private DecodedImage fullDecode(ImageReader reader, ImageInputStream input, long inputStart, int sourceWidth, int sourceHeight, double bytesPerPixel, String formatName) throws IOException {
+
+        long fullSize = (long) (sourceWidth * (double) sourceHeight * bytesPerPixel);
+        if (fullSize > memoryBudget) {
+            throw new IOException("Image " + sourceWidth + "x" + sourceHeight + " needs " + fullSize + " bytes to be decoded, over the memory budget of " + memoryBudget + " bytes");
+        }
+
+        reserve(fullSize);
+        try {
+            input.seek(inputStart);
+            reader.setInput(input, false, true);
+            return new DecodedImage(reader.read(0), sourceWidth, sourceHeight, 1, formatName, sharedBudget, fullSize);
+        } catch (IOException | RuntimeException | Error e) {
+            release(fullSize);
+            throw e;
+        }
+
+    }
+
+    private void reserve(long bytes) throws IOException {
+        if (sharedBudget != null) {
+            sharedBudget.reserve(bytes, maxWaitNanos.getAsLong());
+        }
+    }
+
+    private void release(long bytes) {
+        if (sharedBudget != null) {
+            sharedBudget.release(bytes);
+        }
+    }
+
+    /**
+     * Evaluate the largest subsampling that keeps the decoded image above the target size,
+     * increased if needed to keep the decoded image inside the memory budget.
+     */
+    int subsampling(int sourceWidth, int sourceHeight, Dimension target, double bytesPerPixel) throws IOException {
+
+        int maxSubsampling = Math.max(1, Math.min(sourceWidth / Math.max(1, target.width), sourceHeight / Math.max(1, target.height)));
+        int subsampling = Math.max(1, maxSubsampling / OVERSAMPLING);
+
+        while (decodedSize(sourceWidth, sourceHeight, subsampling, bytesPerPixel) > memoryBudget) {
+            if (subsampling >= maxSubsampling) {
+                throw new IOException("A thumbnail of " + target.width + "x" + target.height + " does not fit in the memory budget of " + memoryBudget + " bytes");
+            }
+            subsampling++;
+        }
+
+        return subsampling;
+
+    }
+
+    private static long decodedSize(int sourceWidth, int sourceHeight, int subsampling, double bytesPerPixel) {
+        return (long) (ceilDiv(sourceWidth, subsampling) * (double) ceilDiv(sourceHeight, subsampling) * bytesPerPixel);
+    }
+
+    private static double bytesPerPixel(SampleModel sampleModel) {
+        return sampleModel.getNumDataElements() * DataBuffer.getDataTypeSize(sampleModel.getDataType()) / 8.0;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+}
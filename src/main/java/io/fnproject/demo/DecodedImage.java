@@ -0,0 +1,107 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Result of a bounded-memory decode: the decoded, possibly subsampled, image
+ * along with the size of the original image read from its header. The memory
+ * reserved for the image in the shared budget is released once the image is
+ * no longer used.
+ *
+ * @version 1.1 17 Oct 2026
+ * @author PaoloB
+ */
+public class DecodedImage {
+
+    private final BufferedImage image;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int subsampling;
+    private final String formatName;
+    private final MemoryBudget budget;
+    private final long reservedBytes;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public DecodedImage(BufferedImage image, int sourceWidth, int sourceHeight, int subsampling, String formatName) {
+        this(image, sourceWidth, sourceHeight, subsampling, formatName, null, 0);
+    }
+
+    public DecodedImage(BufferedImage image, int sourceWidth, int sourceHeight, int subsampling, String formatName, MemoryBudget budget, long reservedBytes) {
+        this.image = image;
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.subsampling = subsampling;
+        this.formatName = formatName;
+        this.budget = budget;
+        this.reservedBytes = reservedBytes;
+    }
+
+    public BufferedImage getImage() {
+        return this.image;
+    }
+
+    public int getSourceWidth() {
+        return this.sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return this.sourceHeight;
+    }
+
+    public int getSubsampling() {
+        return this.subsampling;
+    }
+
+    public String getFormatName() {
+        return this.formatName;
+    }
+
+    /**
+     * Release the memory reserved for the image, only the first call has effect.
+     */
+    public void release() {
+        if (budget != null && released.compareAndSet(false, true)) {
+            budget.release(reservedBytes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+            " sourceWidth='" + getSourceWidth() + "'" +
+            ", sourceHeight='" + getSourceHeight() + "'" +
+            ", decodedWidth='" + getImage().getWidth() + "'" +
+            ", decodedHeight='" + getImage().getHeight() + "'" +
+            ", subsampling='" + getSubsampling() + "'" +
+            ", formatName='" + getFormatName() + "'" +
+            "}";
+    }
+
+}
@@ -0,0 +1,398 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.w3c.dom.NodeList;
+
+/**
+ * Encoders of the thumbnails, with the compression settings of each format.
+ * The ImageWriter of each format is resolved once, when the function is
+ * configured, instead of looking it up in the service registry at every write,
+ * and the writers are reused after a reset() from a small pool.
+ * The thumbnails keep the layout of the original, so gray and alpha reach the
+ * formats that support them, while the alpha is flattened on white for JPEG
+ * and BMP and the images are reduced to black and white for WBMP.
+ *
+ * @version 1.1 17 Oct 2026
+ * @author PaoloB
+ */
+public class EncoderPool {
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    // Version of the handling of the pixel layouts, part of the description of every format
+    private static final String LAYOUT = "layout=native";
+
+    private final float jpegQuality;
+    private final boolean jpegProgressive;
+    private final boolean jpegOptimizeHuffman;
+    private final String jpegChromaSubsampling;
+    private final int pngCompressionLevel;
+    private final String tiffCompression;
+    private final int maxIdleWriters;
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Create the encoders.
+     *
+     * @param jpegQuality           JPEG quality, from 0 to 1
+     * @param jpegProgressive       if true, JPEG images are progressive
+     * @param jpegOptimizeHuffman   if true, the Huffman tables of JPEG images are optimized for each image
+     * @param jpegChromaSubsampling JPEG chroma subsampling: 420, 422 or 444
+     * @param pngCompressionLevel   PNG deflate level, from 0 (fastest) to 9 (smallest)
+     * @param tiffCompression       TIFF compression type, for example LZW or Deflate, or none
+     * @param maxIdleWriters        maximum number of idle writers kept for each format
+     */
+    public EncoderPool(float jpegQuality, boolean jpegProgressive, boolean jpegOptimizeHuffman, String jpegChromaSubsampling,
+                       int pngCompressionLevel, String tiffCompression, int maxIdleWriters) {
+
+        if (jpegQuality < 0 || jpegQuality > 1) {
+            throw new IllegalArgumentException("Invalid JPEG quality " + jpegQuality + ", it must be between 0 and 1");
+        }
+        if (!Arrays.asList("420", "422", "444").contains(jpegChromaSubsampling)) {
+            throw new IllegalArgumentException("Invalid JPEG chroma subsampling " + jpegChromaSubsampling + ", please choose one among: 420, 422, 444");
+        }
+        if (pngCompressionLevel < 0 || pngCompressionLevel > 9) {
+            throw new IllegalArgumentException("Invalid PNG compression level " + pngCompressionLevel + ", it must be between 0 and 9");
+        }
+        this.jpegQuality = jpegQuality;
+        this.jpegProgressive = jpegProgressive;
+        this.jpegOptimizeHuffman = jpegOptimizeHuffman;
+        this.jpegChromaSubsampling = jpegChromaSubsampling;
+        this.pngCompressionLevel = pngCompressionLevel;
+        this.tiffCompression = tiffCompressionType(tiffCompression);
+        this.maxIdleWriters = Math.max(1, maxIdleWriters);
+
+    }
+
+    /**
+     * Resolve the writer of a format and create its first instance, so that the first thumbnail does not pay for it.
+     *
+     * @param format the format
+     * @throws IOException if no writer is available for the format
+     */
+    public void prepare(String format) throws IOException {
+        Pool pool = pool(format);
+        pool.release(pool.acquire());
+    }
+
+    /**
+     * Encode an image.
+     *
+     * @param image  the image
+     * @param format the format
+     * @param output the stream that receives the encoded image
+     * @throws IOException if the image cannot be encoded in the format
+     */
+    public void write(RenderedImage image, String format, ImageOutputStream output) throws IOException {
+
+        Pool pool = pool(format);
+        RenderedImage encodable = image instanceof BufferedImage ? encodable((BufferedImage) image, pool.kind) : image;
+        if (!pool.spi.canEncodeImage(encodable)) {
+            throw new IOException("No writer available for format " + format);
+        }
+
+        ImageWriter writer = pool.acquire();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            IIOMetadata metadata = configure(pool.kind, writer, param, encodable);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(encodable, null, metadata), param);
+            output.flush();
+        } finally {
+            writer.reset();
+            pool.release(writer);
+        }
+
+    }
+
+    /**
+     * Describe the settings that affect the encoding of a format, so that a change makes the thumbnails out of date.
+     *
+     * @param format the format
+     * @return the settings of the format
+     */
+    public String describe(String format) {
+
+        switch (kind(format)) {
+            case "jpeg":
+                return LAYOUT + ",quality=" + jpegQuality + ",progressive=" + jpegProgressive + ",optimizeHuffman=" + jpegOptimizeHuffman + ",chroma=" + jpegChromaSubsampling;
+            case "png":
+                return LAYOUT + ",level=" + pngCompressionLevel;
+            case "tiff":
+                return LAYOUT + ",compression=" + tiffCompression;
+            default:
+                return LAYOUT;
+        }
+
+    }
+
+    /**
+     * Adapt the layout of an image to a format, only when the format cannot store it.
+     *
+     * @param image the image
+     * @param kind  the kind of format
+     * @return the image, or its conversion to a layout supported by the format
+     */
+    static BufferedImage encodable(BufferedImage image, String kind) {
+
+        switch (kind) {
+            case "jpeg":
+            case "bmp":
+                return flatten(image);
+            case "wbmp":
+                return image.getType() == BufferedImage.TYPE_BYTE_BINARY && image.getColorModel().getPixelSize() == 1 ? image : toBilevel(flatten(image));
+            default:
+                return image;
+        }
+
+    }
+
+    /**
+     * Flatten the alpha of an image on a white background, keeping gray images gray.
+     */
+    static BufferedImage flatten(BufferedImage image) {
+
+        if (!image.getColorModel().hasAlpha()) {
+            return image;
+        }
+        int type = image.getColorModel().getNumColorComponents() == 1 ? BufferedImage.TYPE_BYTE_GRAY
+                   : image.getType() == BufferedImage.TYPE_INT_ARGB ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_3BYTE_BGR;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage flattened = new BufferedImage(width, height, type);
+
+        if (type == BufferedImage.TYPE_BYTE_GRAY && image.getColorModel() instanceof ComponentColorModel) {
+            // The samples are blended directly, drawing the image would convert the gray through sRGB
+            Raster raster = image.getRaster();
+            WritableRaster flattenedRaster = flattened.getRaster();
+            float max = (1 << image.getColorModel().getComponentSize(0)) - 1;
+            int[] gray = new int[width];
+            int[] alpha = new int[width];
+            for (int y = 0; y < height; y++) {
+                raster.getSamples(0, y, width, 1, 0, gray);
+                raster.getSamples(0, y, width, 1, 1, alpha);
+                for (int x = 0; x < width; x++) {
+                    float opacity = alpha[x] / max;
+                    gray[x] = Math.round((gray[x] / max * opacity + 1.0f - opacity) * 255.0f);
+                }
+                flattenedRaster.setSamples(0, y, width, 1, 0, gray);
+            }
+            return flattened;
+        }
+
+        Graphics2D graphics2D = flattened.createGraphics();
+        graphics2D.drawImage(image, 0, 0, Color.WHITE, null);
+        graphics2D.dispose();
+        return flattened;
+
+    }
+
+    /**
+     * Reduce an image to black and white.
+     */
+    private static BufferedImage toBilevel(BufferedImage image) {
+
+        BufferedImage bilevel = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D graphics2D = bilevel.createGraphics();
+        graphics2D.drawImage(image, 0, 0, null);
+        graphics2D.dispose();
+        return bilevel;
+
+    }
+
+    private IIOMetadata configure(String kind, ImageWriter writer, ImageWriteParam param, RenderedImage image) throws IIOInvalidTreeException {
+
+        switch (kind) {
+            case "jpeg":
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+                if (jpegProgressive) {
+                    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                }
+                if (jpegOptimizeHuffman && param instanceof JPEGImageWriteParam) {
+                    ((JPEGImageWriteParam) param).setOptimizeHuffmanTables(true);
+                }
+                return "420".equals(jpegChromaSubsampling) ? null : jpegMetadata(writer, param, image);
+            case "png":
+                // The writer maps the quality to the deflate level as (int) (9 * (1 - quality))
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(Math.max(0f, (9 - pngCompressionLevel - 0.5f) / 9f));
+                return null;
+            case "tiff":
+                if (tiffCompression != null) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionType(tiffCompression);
+                }
+                return null;
+            default:
+                return null;
+        }
+
+    }
+
+    /**
+     * Create the metadata of a JPEG image with the sampling factors of the luminance that give the chroma subsampling.
+     */
+    private IIOMetadata jpegMetadata(ImageWriter writer, ImageWriteParam param, RenderedImage image) throws IIOInvalidTreeException {
+
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+        IIOMetadataNode tree = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT);
+        NodeList components = tree.getElementsByTagName("componentSpec");
+
+        // Only color images have chroma, the first component is the luminance
+        if (components.getLength() == 3) {
+            IIOMetadataNode luminance = (IIOMetadataNode) components.item(0);
+            luminance.setAttribute("HsamplingFactor", "444".equals(jpegChromaSubsampling) ? "1" : "2");
+            luminance.setAttribute("VsamplingFactor", "1");
+            metadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+        }
+        return metadata;
+
+    }
+
+    private Pool pool(String format) throws IOException {
+
+        Pool pool = pools.get(format);
+        if (pool != null) {
+            return pool;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No writer available for format " + format);
+        }
+        ImageWriter writer = writers.next();
+        pool = new Pool(writer.getOriginatingProvider(), kind(format));
+        pool.release(writer);
+        Pool existing = pools.putIfAbsent(format, pool);
+        return existing == null ? pool : existing;
+
+    }
+
+    private static String kind(String format) {
+
+        switch (format.toLowerCase(Locale.ROOT)) {
+            case "jpg":
+            case "jpeg":
+                return "jpeg";
+            case "tif":
+            case "tiff":
+                return "tiff";
+            default:
+                return format.toLowerCase(Locale.ROOT);
+        }
+
+    }
+
+    /**
+     * Match the configured TIFF compression with the types supported by the writer, ignoring the case.
+     */
+    private static String tiffCompressionType(String compression) {
+
+        if (compression == null || compression.isBlank() || "none".equalsIgnoreCase(compression)) {
+            return null;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+        String[] types = writers.hasNext() ? writers.next().getDefaultWriteParam().getCompressionTypes() : new String[0];
+        for (String type : types) {
+            if (type.equalsIgnoreCase(compression)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Invalid TIFF compression " + compression + ", please choose one among: none, " + String.join(", ", types));
+
+    }
+
+    /**
+     * Idle writers of a format.
+     */
+    private final class Pool {
+
+        private final ImageWriterSpi spi;
+        private final String kind;
+        private final Queue<ImageWriter> idleWriters = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        Pool(ImageWriterSpi spi, String kind) {
+            this.spi = spi;
+            this.kind = kind;
+        }
+
+        ImageWriter acquire() throws IOException {
+
+            ImageWriter writer = idleWriters.poll();
+            if (writer != null) {
+                idleCount.decrementAndGet();
+                return writer;
+            }
+            return spi.createWriterInstance();
+
+        }
+
+        void release(ImageWriter writer) {
+
+            if (idleCount.incrementAndGet() <= maxIdleWriters) {
+                idleWriters.offer(writer);
+            } else {
+                idleCount.decrementAndGet();
+                writer.dispose();
+            }
+
+        }
+
+    }
+
+}
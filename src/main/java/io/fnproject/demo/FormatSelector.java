@@ -0,0 +1,453 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package io.fnproject.demo;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Selection of the output format of the renditions in the auto format. The
+ * thumbnail is analyzed on a sample of its rows: transparent images and flat
+ * graphics with few colors are written as PNG, with a palette when they have
+ * at most 256 colors, and photos as JPEG. When the analysis is not clear both
+ * formats are encoded in parallel and the smallest is kept, provided that the
+ * JPEG stays within a minimum PSNR from the thumbnail.
+ *
+ * @version 1.3 17 Oct 2026
+ * @author PaoloB
+ */
+public class FormatSelector {
+
+    // Name of the format selected image by image
+    public static final String AUTO = "auto";
+
+    // Formats that can be selected
+    static final String JPEG = "jpg";
+    static final String PNG = "png";
+
+    // Number of rows analyzed at most, evenly spaced
+    private static final int SAMPLE_ROWS = 128;
+
+    // Number of colors of the palette of a PNG
+    private static final int PALETTE_SIZE = 256;
+
+    // Share of the pixels equal to the previous one above which the image is a flat graphic
+    static final double FLAT_GRAPHIC = 0.5;
+
+    // Share of the pixels equal to the previous one below which the image is a photo
+    static final double PHOTO = 0.1;
+
+    private final EncoderPool encoderPool;
+    private final ChunkPool chunkPool;
+    private final ExecutorService candidateExecutor;
+    private final double minPsnr;
+    private final Map<String, String> contentTypes = new HashMap<>();
+
+    /**
+     * Create the selector.
+     *
+     * @param encoderPool       encoders of the candidate formats
+     * @param chunkPool         pool of the buffers of the candidates encoded in parallel
+     * @param candidateExecutor executor that encodes the JPEG candidate while the PNG candidate is encoded
+     * @param minPsnr           minimum PSNR of a JPEG candidate, in dB
+     */
+    public FormatSelector(EncoderPool encoderPool, ChunkPool chunkPool, ExecutorService candidateExecutor, double minPsnr) {
+
+        if (!(minPsnr > 0)) {
+            throw new IllegalArgumentException("Invalid minimum PSNR " + minPsnr + ", it must be positive");
+        }
+        this.encoderPool = encoderPool;
+        this.chunkPool = chunkPool;
+        this.candidateExecutor = candidateExecutor;
+        this.minPsnr = minPsnr;
+        for (String format : new String[] { JPEG, PNG }) {
+            contentTypes.put(format, Rendition.contentTypeOf(format));
+        }
+
+    }
+
+    /**
+     * Get the formats that can be selected, whose encoders are prepared with the function.
+     *
+     * @return the formats
+     */
+    public static Set<String> candidates() {
+        return new LinkedHashSet<>(Arrays.asList(JPEG, PNG));
+    }
+
+    /**
+     * Describe the settings that affect the selection and the encoding, so that a change makes the thumbnails out of date.
+     *
+     * @return the settings of the auto format
+     */
+    public String describe() {
+        return "minPsnr=" + minPsnr + ",jpg(" + encoderPool.describe(JPEG) + "),png(" + encoderPool.describe(PNG) + ")";
+    }
+
+    /**
+     * Select the format of a thumbnail, encoding the candidates when the analysis is not enough.
+     *
+     * @param image the thumbnail
+     * @return the selection, that must be released once written
+     * @throws IOException if a candidate cannot be encoded
+     */
+    public Selection select(BufferedImage image) throws IOException {
+
+        Analysis analysis = Analysis.of(image);
+
+        // The analysis only reads a sample of the rows, all of them are read when the palette or the alpha
+        // depend on them, so that neither a color nor a transparent pixel of the other rows is lost
+        boolean alpha = image.getColorModel().hasAlpha();
+        int[] pixels = analysis.fewColors || (alpha && !analysis.translucent)
+                       ? image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth()) : null;
+        boolean translucent = analysis.translucent || (alpha && translucent(pixels));
+
+        if (translucent || (analysis.flatShare >= FLAT_GRAPHIC && analysis.fewColors)) {
+            return new Selection(PNG, paletteImage(image, pixels, analysis.fewColors, translucent), null);
+        }
+        if (analysis.flatShare < PHOTO && !analysis.fewColors) {
+            return new Selection(JPEG, image, null);
+        }
+
+        // Both candidates are encoded, the JPEG on the candidate executor and the PNG on this thread
+        BufferedImage pngImage = paletteImage(image, pixels, analysis.fewColors, translucent);
+        CompletableFuture<ChunkedImageOutputStream.ChunkRange> jpegFuture = CompletableFuture.supplyAsync(() -> {
+            try {
+                return encode(image, JPEG);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, candidateExecutor);
+        ChunkedImageOutputStream.ChunkRange png;
+        try {
+            png = encode(pngImage, PNG);
+        } catch (IOException | RuntimeException e) {
+            jpegFuture.thenAccept(ChunkedImageOutputStream.ChunkRange::release);
+            throw e;
+        }
+        ChunkedImageOutputStream.ChunkRange jpeg;
+        try {
+            jpeg = jpegFuture.join();
+        } catch (CompletionException e) {
+            png.release();
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+
+        if (jpeg.length() < png.length() && psnr(image, jpeg) >= minPsnr) {
+            png.release();
+            return new Selection(JPEG, image, jpeg);
+        }
+        jpeg.release();
+        return new Selection(PNG, pngImage, png);
+
+    }
+
+    private ChunkedImageOutputStream.ChunkRange encode(BufferedImage image, String format) throws IOException {
+
+        try (ChunkedImageOutputStream out = new ChunkedImageOutputStream(chunkPool)) {
+            encoderPool.write(image, format, out);
+            return out.detach(0, out.length());
+        }
+
+    }
+
+    /**
+     * Evaluate the PSNR of an encoded candidate on the rows analyzed.
+     */
+    private static double psnr(BufferedImage image, ChunkedImageOutputStream.ChunkRange candidate) throws IOException {
+
+        BufferedImage decoded;
+        try (InputStream in = candidate.newInputStream()) {
+            decoded = ImageIO.read(in);
+        }
+        if (decoded == null || decoded.getWidth() != image.getWidth() || decoded.getHeight() != image.getHeight()) {
+            return 0;
+        }
+
+        int width = image.getWidth();
+        int[] row = new int[width];
+        int[] decodedRow = new int[width];
+        double squaredError = 0;
+        long samples = 0;
+        for (int y : Analysis.sampleRows(image.getHeight())) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            decoded.getRGB(0, y, width, 1, decodedRow, 0, width);
+            for (int x = 0; x < width; x++) {
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = ((row[x] >> shift) & 0xff) - ((decodedRow[x] >> shift) & 0xff);
+                    squaredError += difference * difference;
+                }
+            }
+            samples += 3L * width;
+        }
+        return squaredError == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 * samples / squaredError);
+
+    }
+
+    /**
+     * Check if any pixel is not fully opaque.
+     */
+    private static boolean translucent(int[] pixels) {
+
+        for (int pixel : pixels) {
+            if (pixel >>> 24 != 0xff) {
+                return true;
+            }
+        }
+        return false;
+
+    }
+
+    /**
+     * Convert an image to a palette when it has few colors, the PNG writer then writes an indexed PNG.
+     *
+     * @param image       the image
+     * @param pixels      all the pixels of the image, read when it has few colors
+     * @param fewColors   true if the rows analyzed have at most the colors of a palette
+     * @param translucent true if any pixel of the image is not fully opaque
+     * @return the image with a palette, or the image itself when its colors do not fit in a palette
+     */
+    private static BufferedImage paletteImage(BufferedImage image, int[] pixels, boolean fewColors, boolean translucent) {
+
+        if (!fewColors || image.getColorModel() instanceof IndexColorModel) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Palette colors = new Palette();
+        for (int i = 0; i < pixels.length; i++) {
+            if ((i == 0 || pixels[i] != pixels[i - 1]) && !colors.add(pixels[i])) {
+                return image;
+            }
+        }
+
+        int[] palette = colors.toArray();
+        int bits = palette.length <= 2 ? 1 : palette.length <= 4 ? 2 : palette.length <= 16 ? 4 : 8;
+        IndexColorModel colorModel = new IndexColorModel(bits, palette.length, palette, 0, translucent, -1, DataBuffer.TYPE_BYTE);
+        BufferedImage indexed = new BufferedImage(width, height, bits == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY, colorModel);
+        WritableRaster raster = indexed.getRaster();
+        int[] row = new int[width];
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                if (i == 0 || pixels[i] != pixels[i - 1]) {
+                    index = colors.indexOf(pixels[i]);
+                }
+                row[x] = index;
+            }
+            raster.setSamples(0, y, width, 1, 0, row);
+        }
+        return indexed;
+
+    }
+
+    /**
+     * Format selected for a thumbnail, with its content when the candidates have been encoded.
+     */
+    public final class Selection {
+
+        private final String format;
+        private final BufferedImage image;
+        private ChunkedImageOutputStream.ChunkRange content;
+
+        private Selection(String format, BufferedImage image, ChunkedImageOutputStream.ChunkRange content) {
+            this.format = format;
+            this.image = image;
+            this.content = content;
+        }
+
+        public String getFormat() {
+            return this.format;
+        }
+
+        public String getContentType() {
+            return contentTypes.get(format);
+        }
+
+        /**
+         * Write the thumbnail in the selected format, copying the candidate already encoded if any.
+         *
+         * @param out the stream that receives the thumbnail
+         * @throws IOException if the thumbnail cannot be written
+         */
+        public void writeTo(ImageOutputStream out) throws IOException {
+
+            if (content == null) {
+                encoderPool.write(image, format, out);
+                return;
+            }
+            byte[] buffer = new byte[8192];
+            try (InputStream in = content.newInputStream()) {
+                for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                    out.write(buffer, 0, count);
+                }
+            }
+
+        }
+
+        /**
+         * Give back the buffers of the encoded candidate.
+         */
+        public void release() {
+
+            if (content != null) {
+                content.release();
+                content = null;
+            }
+
+        }
+
+    }
+
+    /**
+     * Colors of a palette, kept sorted so that a pixel is looked up by binary search without boxing it.
+     */
+    static final class Palette {
+
+        private final int[] colors = new int[PALETTE_SIZE];
+        private int size;
+
+        /**
+         * Add a color to the palette, if it is not already there.
+         *
+         * @param color the ARGB color
+         * @return false if the color is new and the palette is full
+         */
+        boolean add(int color) {
+
+            int index = Arrays.binarySearch(colors, 0, size, color);
+            if (index >= 0) {
+                return true;
+            }
+            if (size == PALETTE_SIZE) {
+                return false;
+            }
+            int insertion = -index - 1;
+            System.arraycopy(colors, insertion, colors, insertion + 1, size - insertion);
+            colors[insertion] = color;
+            size++;
+            return true;
+
+        }
+
+        /**
+         * Get the index of a color of the palette.
+         *
+         * @param color the ARGB color
+         * @return the index, negative if the color is not in the palette
+         */
+        int indexOf(int color) {
+            return Arrays.binarySearch(colors, 0, size, color);
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(colors, size);
+        }
+
+    }
+
+    /**
+     * Statistics of the rows analyzed.
+     */
+    static final class Analysis {
+
+        final boolean translucent;
+        final boolean fewColors;
+        final double flatShare;
+
+        private Analysis(boolean translucent, boolean fewColors, double flatShare) {
+            this.translucent = translucent;
+            this.fewColors = fewColors;
+            this.flatShare = flatShare;
+        }
+
+        static Analysis of(BufferedImage image) {
+
+            boolean alpha = image.getColorModel().hasAlpha();
+            boolean translucent = false;
+            Palette colors = new Palette();
+            boolean fewColors = true;
+            long flat = 0;
+            long pixels = 0;
+
+            int width = image.getWidth();
+            int[] row = new int[width];
+            for (int y : sampleRows(image.getHeight())) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int pixel = row[x];
+                    if (alpha && pixel >>> 24 != 0xff) {
+                        translucent = true;
+                    }
+                    if (x > 0 && pixel == row[x - 1]) {
+                        flat++;
+                    } else if (fewColors && !colors.add(pixel)) {
+                        fewColors = false;
+                    }
+                }
+                pixels += width;
+            }
+            // Gray images always have few colors, and they are already written with a single channel
+            fewColors &= image.getColorModel().getColorSpace().isCS_sRGB();
+            return new Analysis(translucent, fewColors, pixels == 0 ? 0 : (double) flat / pixels);
+
+        }
+
+        static int[] sampleRows(int height) {
+
+            int count = Math.min(height, SAMPLE_ROWS);
+            int[] rows = new int[count];
+            for (int i = 0; i < count; i++) {
+                rows[i] = (int) ((long) i * height / count);
+            }
+            return rows;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Index of the work already done, used to skip duplicate events and images
+ * that have not changed. Each rendition is stamped with a hash of the content
+ * of its source and of the parameters used to generate it, so a single HEAD
+ * request tells if the rendition is current. The keys of the images processed
+ * recently are also kept in a small LRU cache, to skip bursts of duplicate
+ * events without any request to the object store.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class IdempotencyIndex {
+
+    // Name of the user metadata that holds the hash, sent as opc-meta-source-hash
+    public static final String SOURCE_HASH = "source-hash";
+
+    private final int cacheSize;
+    private final Map<String, Boolean> recentKeys;
+
+    /**
+     * Create an index.
+     *
+     * @param cacheSize number of recent keys kept in memory, 0 disables the cache
+     */
+    public IdempotencyIndex(int cacheSize) {
+
+        this.cacheSize = cacheSize;
+        this.recentKeys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > IdempotencyIndex.this.cacheSize;
+            }
+        };
+
+    }
+
+    /**
+     * Identify the content of an object. The MD5 of the content is preferred, because it does not change
+     * when the same file is uploaded again, otherwise the entity tag is used.
+     *
+     * @param metadata metadata of the object
+     * @return the fingerprint of the content
+     */
+    public static String fingerprint(ObjectMetadata metadata) {
+        return metadata.getContentMd5() != null ? "md5:" + metadata.getContentMd5() : "etag:" + metadata.getETag();
+    }
+
+    /**
+     * Evaluate the hash stamped on a rendition.
+     *
+     * @param fingerprint          fingerprint of the source image
+     * @param renderingParameters  all the parameters that affect the content of the rendition
+     * @return the hash as an hexadecimal string
+     */
+    public static String hash(String fingerprint, String renderingParameters) {
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '|');
+            digest.update(renderingParameters.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+    }
+
+    /**
+     * Check if a rendition was generated from the expected source with the expected parameters.
+     *
+     * @param rendition    metadata of the rendition, null if it does not exist
+     * @param expectedHash the hash the rendition must be stamped with
+     * @return true if the rendition is current
+     */
+    public static boolean isCurrent(ObjectMetadata rendition, String expectedHash) {
+        return rendition != null && rendition.getUserMetadata() != null && expectedHash.equals(rendition.getUserMetadata().get(SOURCE_HASH));
+    }
+
+    /**
+     * Claim a key before processing it. A key is claimed only once until it is released or evicted,
+     * so concurrent and recent duplicates of the same event are recognized.
+     *
+     * @param key key of the work, made of the object and of the hash of its renditions
+     * @return true if the key was not seen recently and the work must be done
+     */
+    public boolean claim(String key) {
+
+        if (cacheSize <= 0) {
+            return true;
+        }
+        synchronized (recentKeys) {
+            return recentKeys.putIfAbsent(key, Boolean.TRUE) == null;
+        }
+
+    }
+
+    /**
+     * Release a key whose processing failed, so that a retry of the event is not skipped.
+     *
+     * @param key key of the work
+     */
+    public void release(String key) {
+
+        if (cacheSize <= 0) {
+            return;
+        }
+        synchronized (recentKeys) {
+            recentKeys.remove(key);
+        }
+
+    }
+
+}
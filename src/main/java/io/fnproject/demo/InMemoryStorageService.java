@@ -0,0 +1,334 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Storage service that keeps the objects in memory. It is meant to run the
+ * function offline, in tests and in benchmarks, without an OCI tenancy.
+ *
+ * @version 1.5 17 Oct 2026
+ * @author PaoloB
+ */
+public class InMemoryStorageService implements StorageService {
+
+    // Instance shared by the functions configured with STORAGE_BACKEND=memory
+    private static final InMemoryStorageService DEFAULT_INSTANCE = new InMemoryStorageService();
+
+    private final Map<String, Map<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, MultipartUpload> multipartUploads = new ConcurrentHashMap<>();
+
+    /**
+     * Get the instance shared by all the functions of the JVM.
+     *
+     * @return the shared in-memory storage
+     */
+    public static InMemoryStorageService getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Store an object without going through a stream.
+     *
+     * @param bucket      name of the bucket
+     * @param objectName  name of the object
+     * @param content     content of the object
+     * @param contentType MIME type of the content, may be null
+     */
+    public void putBytes(String bucket, String objectName, byte[] content, String contentType) {
+        bucket(bucket).put(objectName, new StoredObject(content.clone(), contentType, null));
+    }
+
+    /**
+     * Read an object without going through a stream.
+     *
+     * @param bucket     name of the bucket
+     * @param objectName name of the object
+     * @return a copy of the content of the object, or null if the object does not exist
+     */
+    public byte[] getBytes(String bucket, String objectName) {
+        StoredObject storedObject = bucket(bucket).get(objectName);
+        return storedObject == null ? null : storedObject.content.clone();
+    }
+
+    /**
+     * Remove all the objects of all the buckets.
+     */
+    public void clear() {
+        buckets.clear();
+        multipartUploads.clear();
+    }
+
+    /**
+     * Get the number of multipart uploads started and not yet committed or aborted.
+     *
+     * @return the number of pending multipart uploads
+     */
+    public int getPendingMultipartUploads() {
+        return multipartUploads.size();
+    }
+
+    @Override
+    public InputStream getObject(String bucket, String objectName) throws IOException {
+        return new ByteArrayInputStream(find(bucket, objectName).content);
+    }
+
+    @Override
+    public InputStream getObject(String bucket, String objectName, long offset, long length, String eTag) throws IOException {
+
+        StoredObject storedObject = find(bucket, objectName);
+        if (eTag != null && !eTag.equals(storedObject.eTag)) {
+            throw new IOException("Precondition failed: " + objectName + " has changed");
+        }
+        byte[] content = storedObject.content;
+        if (offset < 0 || offset >= content.length || length <= 0) {
+            throw new IOException("Range not satisfiable: " + offset + "-" + (offset + length - 1) + " of " + objectName);
+        }
+        return new ByteArrayInputStream(content, (int) offset, (int) Math.min(length, content.length - offset));
+
+    }
+
+    @Override
+    public ObjectMetadata headObject(String bucket, String objectName) {
+
+        StoredObject storedObject = bucket(bucket).get(objectName);
+        if (storedObject == null) {
+            return null;
+        }
+        return new ObjectMetadata(storedObject.content.length, storedObject.contentType, storedObject.eTag, storedObject.contentMd5, storedObject.userMetadata);
+
+    }
+
+    @Override
+    public void putObject(String bucket, String objectName, InputStream body, long contentLength, String contentType, Map<String, String> userMetadata) throws IOException {
+
+        byte[] content = body.readAllBytes();
+        if (contentLength >= 0 && content.length != contentLength) {
+            throw new IOException("Content length mismatch for " + objectName + ": expected " + contentLength + ", read " + content.length);
+        }
+        bucket(bucket).put(objectName, new StoredObject(content, contentType, userMetadata));
+
+    }
+
+    @Override
+    public String createMultipartUpload(String bucket, String objectName, String contentType, Map<String, String> userMetadata) {
+
+        String uploadId = UUID.randomUUID().toString();
+        multipartUploads.put(uploadId, new MultipartUpload(bucket, objectName, contentType, userMetadata));
+        return uploadId;
+
+    }
+
+    @Override
+    public String uploadPart(String bucket, String objectName, String uploadId, int partNumber, InputStream body, long contentLength) throws IOException {
+
+        MultipartUpload upload = findUpload(bucket, objectName, uploadId);
+        byte[] content = body.readAllBytes();
+        if (content.length != contentLength) {
+            throw new IOException("Content length mismatch for part " + partNumber + " of " + objectName + ": expected " + contentLength + ", read " + content.length);
+        }
+        StoredObject part = new StoredObject(content, null, null);
+        upload.parts.put(partNumber, part);
+        return part.eTag;
+
+    }
+
+    @Override
+    public void commitMultipartUpload(String bucket, String objectName, String uploadId, List<String> partETags) throws IOException {
+
+        MultipartUpload upload = findUpload(bucket, objectName, uploadId);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (int i = 0; i < partETags.size(); i++) {
+            StoredObject part = upload.parts.get(i + 1);
+            if (part == null || !part.eTag.equals(partETags.get(i))) {
+                throw new IOException("Part " + (i + 1) + " of " + objectName + " is missing or does not match its entity tag");
+            }
+            content.write(part.content);
+        }
+        multipartUploads.remove(uploadId);
+        bucket(bucket).put(objectName, new StoredObject(content.toByteArray(), upload.contentType, upload.userMetadata));
+
+    }
+
+    @Override
+    public void abortMultipartUpload(String bucket, String objectName, String uploadId) throws IOException {
+
+        findUpload(bucket, objectName, uploadId);
+        multipartUploads.remove(uploadId);
+
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyObject(String sourceBucket, String sourceObjectName, String destinationBucket, String destinationObjectName, long timeoutNanos) {
+
+        try {
+            StoredObject storedObject = find(sourceBucket, sourceObjectName);
+            bucket(destinationBucket).put(destinationObjectName, storedObject);
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        } catch (FileNotFoundException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+    }
+
+    @Override
+    public void deleteObject(String bucket, String objectName) throws IOException {
+
+        if (bucket(bucket).remove(objectName) == null) {
+            throw new FileNotFoundException("Object not found: " + bucket + "/" + objectName);
+        }
+
+    }
+
+    @Override
+    public void renameObject(String bucket, String objectName, String newName, String eTag) throws IOException {
+
+        StoredObject storedObject = find(bucket, objectName);
+        if (eTag != null && !eTag.equals(storedObject.eTag)) {
+            throw new IOException("Precondition failed: " + objectName + " has changed");
+        }
+        bucket(bucket).put(newName, storedObject);
+        bucket(bucket).remove(objectName);
+
+    }
+
+    @Override
+    public ObjectListing listObjects(String bucket, String prefix, String start, int limit) {
+
+        List<String> objectNames = new ArrayList<>();
+        String nextStartWith = null;
+        for (String objectName : new TreeSet<>(bucket(bucket).keySet())) {
+            if ((prefix != null && !objectName.startsWith(prefix)) || (start != null && objectName.compareTo(start) < 0)) {
+                continue;
+            }
+            if (objectNames.size() == limit) {
+                nextStartWith = objectName;
+                break;
+            }
+            objectNames.add(objectName);
+        }
+        return new ObjectListing(objectNames, nextStartWith);
+
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the content must survive the function instance
+    }
+
+    private Map<String, StoredObject> bucket(String bucket) {
+        return buckets.computeIfAbsent(bucket, name -> new ConcurrentHashMap<>());
+    }
+
+    private StoredObject find(String bucket, String objectName) throws FileNotFoundException {
+
+        StoredObject storedObject = bucket(bucket).get(objectName);
+        if (storedObject == null) {
+            throw new FileNotFoundException("Object not found: " + bucket + "/" + objectName);
+        }
+        return storedObject;
+
+    }
+
+    private MultipartUpload findUpload(String bucket, String objectName, String uploadId) throws FileNotFoundException {
+
+        MultipartUpload upload = multipartUploads.get(uploadId);
+        if (upload == null || !upload.bucket.equals(bucket) || !upload.objectName.equals(objectName)) {
+            throw new FileNotFoundException("Multipart upload not found: " + bucket + "/" + objectName + " " + uploadId);
+        }
+        return upload;
+
+    }
+
+    /**
+     * Destination and parts of a multipart upload in progress.
+     */
+    private static final class MultipartUpload {
+
+        private final String bucket;
+        private final String objectName;
+        private final String contentType;
+        private final Map<String, String> userMetadata;
+        private final SortedMap<Integer, StoredObject> parts = new ConcurrentSkipListMap<>();
+
+        MultipartUpload(String bucket, String objectName, String contentType, Map<String, String> userMetadata) {
+            this.bucket = bucket;
+            this.objectName = objectName;
+            this.contentType = contentType;
+            this.userMetadata = userMetadata;
+        }
+
+    }
+
+    /**
+     * Immutable content and metadata of an object.
+     */
+    private static final class StoredObject {
+
+        private final byte[] content;
+        private final String contentType;
+        private final String eTag;
+        private final String contentMd5;
+        private final Map<String, String> userMetadata;
+
+        StoredObject(byte[] content, String contentType, Map<String, String> userMetadata) {
+
+            this.content = content;
+            this.contentType = contentType;
+            this.userMetadata = userMetadata == null ? new HashMap<>() : new HashMap<>(userMetadata);
+            // As in Object Storage, the entity tag changes at every write even if the content is the same
+            this.eTag = UUID.randomUUID().toString();
+            try {
+                byte[] md5 = MessageDigest.getInstance("MD5").digest(content);
+                this.contentMd5 = Base64.getEncoder().encodeToString(md5);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available", e);
+            }
+
+        }
+
+    }
+
+}
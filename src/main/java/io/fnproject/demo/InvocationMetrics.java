@@ -0,0 +1,295 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and resources of a single invocation, broken down by stage. The
+ * stages of the objects processed in parallel are recorded concurrently with
+ * atomic counters, and at the end of the invocation the metrics are turned into
+ * a JSON document together with the rolling percentiles of the container.
+ *
+ * @version 1.3 17 Oct 2026
+ * @author PaoloB
+ */
+public class InvocationMetrics {
+
+    /**
+     * Stages of the processing of an object.
+     */
+    public enum Stage {
+        /** Metadata requests, on the source and on the renditions. */
+        HEAD,
+        /** Checks of the source before its download, including the read of its header when needed. */
+        PREFLIGHT,
+        /** Opening of the download of the source, or its whole download when it is downloaded in parallel. */
+        GET,
+        /** Decode of the source, including the download of its content when it is streamed. */
+        DECODE,
+        /** Scaling of a rendition. */
+        SCALE,
+        /** Encoding of a rendition, including the parts uploaded while encoding. */
+        ENCODE,
+        /** Upload of a rendition after its encoding. */
+        PUT,
+        /** Archive of the source: server-side copy until the end of its work request, upload of its content or rename. */
+        COPY,
+        /** Delete of the source. */
+        DELETE
+    }
+
+    /**
+     * Rolling histograms of a container, shared by all its invocations.
+     */
+    public static final class Histograms {
+
+        private final LatencyHistogram invocations;
+        private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+
+        /**
+         * Create the histograms.
+         *
+         * @param windowNanos length of the rolling window, in nanoseconds
+         */
+        public Histograms(long windowNanos) {
+
+            invocations = new LatencyHistogram(windowNanos);
+            for (Stage stage : Stage.values()) {
+                stages.put(stage, new LatencyHistogram(windowNanos));
+            }
+
+        }
+
+    }
+
+    private static final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+    static {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    private final Histograms histograms;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray stageCounts = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray stageMaxNanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong pixelsDecoded = new AtomicLong();
+    private final AtomicLong pixelsEncoded = new AtomicLong();
+
+    /**
+     * Start the metrics of an invocation.
+     *
+     * @param histograms rolling histograms of the container
+     */
+    public InvocationMetrics(Histograms histograms) {
+
+        this.histograms = histograms;
+        // The peaks of the heap are measured from the start of the invocation
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+
+    }
+
+    /**
+     * Record the duration of a stage.
+     *
+     * @param stage the stage
+     * @param nanos the duration, in nanoseconds
+     */
+    public void record(Stage stage, long nanos) {
+
+        int index = stage.ordinal();
+        stageCounts.incrementAndGet(index);
+        stageNanos.addAndGet(index, nanos);
+        stageMaxNanos.accumulateAndGet(index, nanos, Math::max);
+        histograms.stages.get(stage).record(nanos);
+
+    }
+
+    /**
+     * Record the duration of a stage started at a given time.
+     *
+     * @param stage      the stage
+     * @param startNanos the start of the stage, as returned by System.nanoTime()
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Count the bytes read from a stream as downloaded bytes.
+     *
+     * @param in the stream of a download
+     * @return a stream that counts the bytes read
+     */
+    public InputStream countBytesIn(InputStream in) {
+
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesIn.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0) {
+                    bytesIn.addAndGet(count);
+                }
+                return count;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                bytesIn.addAndGet(skipped);
+                return skipped;
+            }
+
+        };
+
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.addAndGet(bytes);
+    }
+
+    public void addPixelsDecoded(long pixels) {
+        pixelsDecoded.addAndGet(pixels);
+    }
+
+    public void addPixelsEncoded(long pixels) {
+        pixelsEncoded.addAndGet(pixels);
+    }
+
+    /**
+     * End the invocation and describe its metrics as a JSON document.
+     *
+     * @param mapper   mapper used to create the document
+     * @param response results of the objects processed by the invocation
+     * @param error    message of the error that stopped the invocation, may be null
+     * @return the metrics of the invocation and the rolling percentiles of the container
+     */
+    public ObjectNode complete(ObjectMapper mapper, BatchResponse response, String error) {
+
+        long durationNanos = System.nanoTime() - startNanos;
+        histograms.invocations.record(durationNanos);
+
+        ObjectNode metrics = mapper.createObjectNode();
+        metrics.put("durationMs", toMillis(durationNanos));
+        metrics.put("objects", response.getResults().size());
+        metrics.put("processed", response.getProcessed());
+        metrics.put("skipped", response.getSkipped());
+        metrics.put("failed", response.getFailed());
+        metrics.put("deferred", response.getDeferred());
+        metrics.put("rejected", response.getRejected());
+        if (error != null) {
+            metrics.put("error", error);
+        }
+        metrics.put("bytesIn", bytesIn.get());
+        metrics.put("bytesOut", bytesOut.get());
+        metrics.put("pixelsDecoded", pixelsDecoded.get());
+        metrics.put("pixelsEncoded", pixelsEncoded.get());
+
+        // The peaks of the pools are not simultaneous, so their sum is an upper bound of the peak of the heap
+        long heapPeak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            heapPeak += pool.getPeakUsage().getUsed();
+        }
+        metrics.put("heapPeakBytes", heapPeak);
+        metrics.put("heapMaxBytes", Runtime.getRuntime().maxMemory());
+
+        ObjectNode stages = metrics.putObject("stages");
+        for (Stage stage : Stage.values()) {
+            long count = stageCounts.get(stage.ordinal());
+            if (count > 0) {
+                ObjectNode node = stages.putObject(stage.name());
+                node.put("count", count);
+                node.put("totalMs", toMillis(stageNanos.get(stage.ordinal())));
+                node.put("maxMs", toMillis(stageMaxNanos.get(stage.ordinal())));
+            }
+        }
+
+        ObjectNode rolling = metrics.putObject("rolling");
+        putPercentiles(rolling.putObject("invocation"), histograms.invocations);
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms.stages.get(stage);
+            if (histogram.count() > 0) {
+                putPercentiles(rolling.putObject(stage.name()), histogram);
+            }
+        }
+
+        return metrics;
+
+    }
+
+    private static void putPercentiles(ObjectNode node, LatencyHistogram histogram) {
+
+        node.put("count", histogram.count());
+        node.put("p50Ms", histogram.percentile(50) / 1000.0);
+        node.put("p95Ms", histogram.percentile(95) / 1000.0);
+        node.put("p99Ms", histogram.percentile(99) / 1000.0);
+
+    }
+
+    private static double toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) / 1000.0;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Resampler that draws the image with Java2D and default rendering hints,
+ * that is with nearest neighbour sampling. It is kept as a reference for
+ * benchmarks and for compatibility with the thumbnails generated so far.
+ * The standard 8-bit layouts of the original are kept, the 16-bit ones are
+ * drawn with 8-bit samples, as by the separable resampler, and the indexed
+ * and custom ones are drawn as RGB or ARGB.
+ *
+ * @version 1.2 17 Oct 2026
+ * @author PaoloB
+ */
+public class Java2DResampler implements Resampler {
+
+    @Override
+    public BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+
+        int type;
+        switch (source.getType()) {
+            case BufferedImage.TYPE_CUSTOM:
+            case BufferedImage.TYPE_BYTE_BINARY:
+            case BufferedImage.TYPE_BYTE_INDEXED:
+                type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+                break;
+            // The writers of JPEG and BMP do not accept 16-bit samples
+            case BufferedImage.TYPE_USHORT_GRAY:
+                type = BufferedImage.TYPE_BYTE_GRAY;
+                break;
+            case BufferedImage.TYPE_USHORT_565_RGB:
+            case BufferedImage.TYPE_USHORT_555_RGB:
+                type = BufferedImage.TYPE_INT_RGB;
+                break;
+            default:
+                type = source.getType();
+        }
+
+        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, type);
+        Graphics2D graphics2D = resizedImage.createGraphics();
+        graphics2D.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        graphics2D.dispose();
+
+        return resizedImage;
+
+    }
+
+}
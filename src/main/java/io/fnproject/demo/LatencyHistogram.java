@@ -0,0 +1,177 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies over a rolling window, used to report the percentiles
+ * of the invocations served by a warm container. The latencies are counted in
+ * log-linear buckets of microseconds, 8 buckets for each power of two, so the
+ * relative error of a percentile is below 13% and recording a value is a single
+ * atomic increment without allocations. The percentiles are evaluated on the
+ * current window and on the previous one, so they never start from empty.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final long windowNanos;
+    private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+    private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+    private volatile long windowStart = System.nanoTime();
+
+    /**
+     * Create an histogram.
+     *
+     * @param windowNanos length of the window, in nanoseconds
+     */
+    public LatencyHistogram(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record(long nanos) {
+
+        rotate(System.nanoTime());
+        current.incrementAndGet(bucket(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos))));
+
+    }
+
+    /**
+     * Get the number of latencies recorded in the current and in the previous window.
+     *
+     * @return the number of latencies
+     */
+    public long count() {
+
+        rotate(System.nanoTime());
+        AtomicLongArray currentCounts = current;
+        AtomicLongArray previousCounts = previous;
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += currentCounts.get(i) + previousCounts.get(i);
+        }
+        return count;
+
+    }
+
+    /**
+     * Evaluate a percentile of the latencies of the current and of the previous window.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket that contains the percentile, in microseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+
+        rotate(System.nanoTime());
+        AtomicLongArray currentCounts = current;
+        AtomicLongArray previousCounts = previous;
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = currentCounts.get(i) + previousCounts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+
+    }
+
+    private void rotate(long now) {
+
+        if (now - windowStart < windowNanos) {
+            return;
+        }
+        synchronized (this) {
+            long elapsed = now - windowStart;
+            if (elapsed < windowNanos) {
+                return;
+            }
+            // After a long idle period the previous window is stale as well
+            previous = elapsed < 2 * windowNanos ? current : new AtomicLongArray(BUCKETS);
+            current = new AtomicLongArray(BUCKETS);
+            windowStart = now;
+        }
+
+    }
+
+    static int bucket(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+
+    }
+
+    static long upperBound(int bucket) {
+
+        if (bucket < SUB_BUCKETS - 1) {
+            return bucket;
+        }
+        return lowerBound(bucket + 1) - 1;
+
+    }
+
+    private static long lowerBound(int bucket) {
+
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        if (exponent >= 63) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap shared by the images processed at the same time by the container. The
+ * decoded images reserve their bytes before they are allocated, and release
+ * them when all their renditions are uploaded. A single decoded image may hold
+ * at most half of the budget, so that a large image never stalls all the other
+ * images of a batch, and a decode waiting for memory gets it as soon as the
+ * renditions of the other images are uploaded. The originals downloaded into
+ * the heap never wait: they take their bytes only if available, and all
+ * together at most the other half of the budget, so the decodes waiting while
+ * their originals are held can always proceed.
+ *
+ * @version 1.1 17 Oct 2026
+ * @author PaoloB
+ */
+public class MemoryBudget {
+
+    private final long capacity;
+
+    // Bytes reserved by the decoded images and by the downloaded originals, and the part of the latter
+    private long reserved;
+    private long buffers;
+
+    /**
+     * Create a budget.
+     *
+     * @param capacity number of bytes shared by the images
+     */
+    public MemoryBudget(long capacity) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid memory budget " + capacity + ", it must be positive");
+        }
+        this.capacity = capacity;
+
+    }
+
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get the largest reservation of a single decoded image, that is also the limit of all the downloaded originals together.
+     *
+     * @return the number of bytes, half of the capacity
+     */
+    public long getShareLimit() {
+        return capacity / 2;
+    }
+
+    /**
+     * Get the bytes currently reserved.
+     *
+     * @return the bytes reserved by the decoded images and by the downloaded originals
+     */
+    public synchronized long getReserved() {
+        return this.reserved;
+    }
+
+    /**
+     * Reserve the memory of a decoded image, waiting until it is released by the other images.
+     *
+     * @param bytes        number of bytes, at most the share limit
+     * @param timeoutNanos maximum time to wait
+     * @throws IOException if the bytes are over the share limit, or if they are not released in time
+     */
+    public synchronized void reserve(long bytes, long timeoutNanos) throws IOException {
+
+        if (bytes > getShareLimit()) {
+            throw new IOException("A decoded image of " + bytes + " bytes does not fit in the memory budget of " + capacity + " bytes");
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (reserved + bytes > capacity) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new IOException("Timed out waiting for " + bytes + " bytes of the memory budget, " + reserved + " of " + capacity + " bytes in use");
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the memory budget");
+            }
+        }
+        reserved += bytes;
+
+    }
+
+    /**
+     * Reserve the memory of a downloaded original, without waiting.
+     *
+     * @param bytes number of bytes
+     * @return true if the bytes are reserved, false if the original must be streamed instead
+     */
+    public synchronized boolean tryReserveBuffer(long bytes) {
+
+        if (buffers + bytes > getShareLimit() || reserved + bytes > capacity) {
+            return false;
+        }
+        buffers += bytes;
+        reserved += bytes;
+        return true;
+
+    }
+
+    /**
+     * Release the memory of a decoded image.
+     *
+     * @param bytes number of bytes reserved by the image
+     */
+    public synchronized void release(long bytes) {
+
+        reserved -= bytes;
+        notifyAll();
+
+    }
+
+    /**
+     * Release the memory of a downloaded original.
+     *
+     * @param bytes number of bytes reserved by the original
+     */
+    public synchronized void releaseBuffer(long bytes) {
+
+        buffers -= bytes;
+        release(bytes);
+
+    }
+
+}
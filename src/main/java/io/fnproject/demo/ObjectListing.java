@@ -0,0 +1,61 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of the objects of a bucket.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class ObjectListing {
+
+    private final List<String> objectNames;
+    private final String nextStartWith;
+
+    public ObjectListing(List<String> objectNames, String nextStartWith) {
+        this.objectNames = Collections.unmodifiableList(objectNames);
+        this.nextStartWith = nextStartWith;
+    }
+
+    public List<String> getObjectNames() {
+        return this.objectNames;
+    }
+
+    /**
+     * Get the name of the first object of the next page.
+     *
+     * @return the start of the next page, or null if this is the last page
+     */
+    public String getNextStartWith() {
+        return this.nextStartWith;
+    }
+
+}
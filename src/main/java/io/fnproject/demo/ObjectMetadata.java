@@ -0,0 +1,85 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Metadata of an object stored in a bucket, as returned by a HEAD request.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class ObjectMetadata {
+
+    private final long contentLength;
+    private final String contentType;
+    private final String eTag;
+    private final String contentMd5;
+    private final Map<String, String> userMetadata;
+
+    public ObjectMetadata(long contentLength, String contentType, String eTag, String contentMd5, Map<String, String> userMetadata) {
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+        this.eTag = eTag;
+        this.contentMd5 = contentMd5;
+        this.userMetadata = userMetadata == null ? Collections.emptyMap() : Collections.unmodifiableMap(userMetadata);
+    }
+
+    public long getContentLength() {
+        return this.contentLength;
+    }
+
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    public String getETag() {
+        return this.eTag;
+    }
+
+    public String getContentMd5() {
+        return this.contentMd5;
+    }
+
+    public Map<String, String> getUserMetadata() {
+        return this.userMetadata;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+            " contentLength='" + getContentLength() + "'" +
+            ", contentType='" + getContentType() + "'" +
+            ", eTag='" + getETag() + "'" +
+            ", contentMd5='" + getContentMd5() + "'" +
+            ", userMetadata='" + getUserMetadata() + "'" +
+            "}";
+    }
+
+}
@@ -0,0 +1,391 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import com.oracle.bmc.ClientConfiguration;
+import com.oracle.bmc.auth.BasicAuthenticationDetailsProvider;
+import com.oracle.bmc.http.client.jersey.ApacheClientProperties;
+import com.oracle.bmc.model.BmcException;
+import com.oracle.bmc.model.Range;
+import com.oracle.bmc.objectstorage.ObjectStorage;
+import com.oracle.bmc.objectstorage.ObjectStorageClient;
+import com.oracle.bmc.objectstorage.model.CommitMultipartUploadDetails;
+import com.oracle.bmc.objectstorage.model.CommitMultipartUploadPartDetails;
+import com.oracle.bmc.objectstorage.model.CopyObjectDetails;
+import com.oracle.bmc.objectstorage.model.CreateMultipartUploadDetails;
+import com.oracle.bmc.objectstorage.model.ListObjects;
+import com.oracle.bmc.objectstorage.model.ObjectSummary;
+import com.oracle.bmc.objectstorage.model.RenameObjectDetails;
+import com.oracle.bmc.objectstorage.model.WorkRequest;
+import com.oracle.bmc.objectstorage.requests.AbortMultipartUploadRequest;
+import com.oracle.bmc.objectstorage.requests.CommitMultipartUploadRequest;
+import com.oracle.bmc.objectstorage.requests.CopyObjectRequest;
+import com.oracle.bmc.objectstorage.requests.CreateMultipartUploadRequest;
+import com.oracle.bmc.objectstorage.requests.DeleteObjectRequest;
+import com.oracle.bmc.objectstorage.requests.GetObjectRequest;
+import com.oracle.bmc.objectstorage.requests.GetWorkRequestRequest;
+import com.oracle.bmc.objectstorage.requests.HeadObjectRequest;
+import com.oracle.bmc.objectstorage.requests.ListObjectsRequest;
+import com.oracle.bmc.objectstorage.requests.PutObjectRequest;
+import com.oracle.bmc.objectstorage.requests.RenameObjectRequest;
+import com.oracle.bmc.objectstorage.requests.UploadPartRequest;
+import com.oracle.bmc.objectstorage.responses.CopyObjectResponse;
+import com.oracle.bmc.objectstorage.responses.HeadObjectResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Storage service backed by OCI Object Storage. The underlying client, with its
+ * HTTP stack and pool of keep-alive connections, is built once and reused by
+ * every invocation served by the container.
+ *
+ * @version 1.6 17 Oct 2026
+ * @author PaoloB
+ */
+public class OciStorageService implements StorageService {
+
+    // Adaptive backoff used to poll the work requests of the copies
+    private static final long FIRST_POLL_DELAY_MILLIS = 100;
+    private static final long MAX_POLL_DELAY_MILLIS = 2000;
+    private static final double POLL_BACKOFF_FACTOR = 1.5;
+
+    private final ObjectStorage client;
+    private final ExecutorService requestExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final String region;
+    private final String nameSpace;
+
+    /**
+     * Create the Object Storage client.
+     *
+     * @param provider          authentication provider used to sign the requests
+     * @param endpoint          endpoint of Object Storage, or null for the one of the region of the provider
+     * @param region            OCI region, used as destination region of the copies
+     * @param nameSpace         Object Storage namespace
+     * @param maxConnections    maximum number of pooled connections
+     * @param keepAliveSeconds  how long an idle connection is kept in the pool
+     */
+    public OciStorageService(BasicAuthenticationDetailsProvider provider, String endpoint, String region, String nameSpace, int maxConnections, int keepAliveSeconds) {
+
+        this.region = region;
+        this.nameSpace = nameSpace;
+        // The requests of the copies and of their work requests block, so they run on their own threads, at most one
+        // per connection, while the scheduler only times the checks of the work requests
+        this.requestExecutor = Executors.newFixedThreadPool(maxConnections, ThumbnailGeneratorFunction.daemonThreadFactory("copy"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThumbnailGeneratorFunction.daemonThreadFactory("copy-poll"));
+
+        // All the requests go to the same endpoint, so the whole pool is available to a single route
+        connectionManager = new PoolingHttpClientConnectionManager(keepAliveSeconds, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        client = ObjectStorageClient.builder()
+                    .configuration(ClientConfiguration.builder()
+                                    .connectionTimeoutMillis(10000)
+                                    .readTimeoutMillis(60000)
+                                    .build())
+                    .endpoint(endpoint)
+                    .additionalClientConfigurator(builder -> {
+                        builder.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+                        builder.property(ApacheClientProperties.CONNECTION_MANAGER_SHARED, Boolean.TRUE);
+                        builder.property(ApacheClientProperties.KEEPALIVE_STRATEGY, (response, context) -> keepAliveSeconds * 1000L);
+                    })
+                    .build(provider);
+
+    }
+
+    @Override
+    public InputStream getObject(String bucket, String objectName) {
+
+        return client.getObject(GetObjectRequest.builder()
+                                    .namespaceName(nameSpace)
+                                    .bucketName(bucket)
+                                    .objectName(objectName)
+                                    .build())
+                     .getInputStream();
+
+    }
+
+    @Override
+    public InputStream getObject(String bucket, String objectName, long offset, long length, String eTag) {
+
+        // The end of the range is inclusive
+        return client.getObject(GetObjectRequest.builder()
+                                    .namespaceName(nameSpace)
+                                    .bucketName(bucket)
+                                    .objectName(objectName)
+                                    .range(new Range(offset, offset + length - 1))
+                                    .ifMatch(eTag)
+                                    .build())
+                     .getInputStream();
+
+    }
+
+    @Override
+    public ObjectMetadata headObject(String bucket, String objectName) {
+
+        try {
+            HeadObjectResponse headObjectResponse = client.headObject(HeadObjectRequest.builder()
+                                                                        .namespaceName(nameSpace)
+                                                                        .bucketName(bucket)
+                                                                        .objectName(objectName)
+                                                                        .build());
+            return new ObjectMetadata(headObjectResponse.getContentLength() == null ? -1 : headObjectResponse.getContentLength(),
+                                      headObjectResponse.getContentType(),
+                                      headObjectResponse.getETag(),
+                                      headObjectResponse.getContentMd5(),
+                                      headObjectResponse.getOpcMeta());
+        } catch (BmcException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+
+    }
+
+    @Override
+    public void putObject(String bucket, String objectName, InputStream body, long contentLength, String contentType, Map<String, String> userMetadata) {
+
+        client.putObject(PutObjectRequest.builder()
+                            .namespaceName(nameSpace)
+                            .bucketName(bucket)
+                            .objectName(objectName)
+                            .contentLength(contentLength)
+                            .contentType(contentType)
+                            .opcMeta(userMetadata)
+                            .putObjectBody(body)
+                            .build());
+
+    }
+
+    @Override
+    public String createMultipartUpload(String bucket, String objectName, String contentType, Map<String, String> userMetadata) {
+
+        return client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                                                .namespaceName(nameSpace)
+                                                .bucketName(bucket)
+                                                .createMultipartUploadDetails(CreateMultipartUploadDetails.builder()
+                                                                                .object(objectName)
+                                                                                .contentType(contentType)
+                                                                                .metadata(userMetadata)
+                                                                                .build())
+                                                .build())
+                     .getMultipartUpload()
+                     .getUploadId();
+
+    }
+
+    @Override
+    public String uploadPart(String bucket, String objectName, String uploadId, int partNumber, InputStream body, long contentLength) {
+
+        return client.uploadPart(UploadPartRequest.builder()
+                                    .namespaceName(nameSpace)
+                                    .bucketName(bucket)
+                                    .objectName(objectName)
+                                    .uploadId(uploadId)
+                                    .uploadPartNum(partNumber)
+                                    .contentLength(contentLength)
+                                    .uploadPartBody(body)
+                                    .build())
+                     .getETag();
+
+    }
+
+    @Override
+    public void commitMultipartUpload(String bucket, String objectName, String uploadId, List<String> partETags) {
+
+        List<CommitMultipartUploadPartDetails> partsToCommit = new ArrayList<>();
+        for (int i = 0; i < partETags.size(); i++) {
+            partsToCommit.add(CommitMultipartUploadPartDetails.builder()
+                                .partNum(i + 1)
+                                .etag(partETags.get(i))
+                                .build());
+        }
+
+        client.commitMultipartUpload(CommitMultipartUploadRequest.builder()
+                                        .namespaceName(nameSpace)
+                                        .bucketName(bucket)
+                                        .objectName(objectName)
+                                        .uploadId(uploadId)
+                                        .commitMultipartUploadDetails(CommitMultipartUploadDetails.builder()
+                                                                        .partsToCommit(partsToCommit)
+                                                                        .build())
+                                        .build());
+
+    }
+
+    @Override
+    public void abortMultipartUpload(String bucket, String objectName, String uploadId) {
+
+        client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                                        .namespaceName(nameSpace)
+                                        .bucketName(bucket)
+                                        .objectName(objectName)
+                                        .uploadId(uploadId)
+                                        .build());
+
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyObject(String sourceBucket, String sourceObjectName, String destinationBucket, String destinationObjectName, long timeoutNanos) {
+
+        CompletableFuture<Boolean> copied = new CompletableFuture<>();
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        requestExecutor.execute(() -> {
+            try {
+                // To use the CopyObject APIs you need to allow Object Storage to access the tenancy
+                CopyObjectResponse copyObjectResponse = client.copyObject(CopyObjectRequest.builder()
+                                                                            .namespaceName(nameSpace)
+                                                                            .bucketName(sourceBucket)
+                                                                            .copyObjectDetails(CopyObjectDetails.builder()
+                                                                                                .sourceObjectName(sourceObjectName)
+                                                                                                .destinationRegion(region)
+                                                                                                .destinationNamespace(nameSpace)
+                                                                                                .destinationBucket(destinationBucket)
+                                                                                                .destinationObjectName(destinationObjectName)
+                                                                                                .build())
+                                                                            .build());
+
+                // The call is asynchronous, poll the work request until it is finished
+                pollWorkRequest(copyObjectResponse.getOpcWorkRequestId(), FIRST_POLL_DELAY_MILLIS, deadline, copied);
+            } catch (Exception e) {
+                copied.completeExceptionally(e);
+            }
+        });
+
+        return copied;
+
+    }
+
+    /**
+     * Check the status of a work request and, if it is not finished, schedule the next check with a longer delay.
+     * No thread is blocked while waiting for the copy, and the checks stop at the deadline.
+     */
+    private void pollWorkRequest(String workRequestId, long delayMillis, long deadline, CompletableFuture<Boolean> copied) {
+
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        scheduler.schedule(() -> requestExecutor.execute(() -> {
+            try {
+                if (System.nanoTime() - deadline >= 0) {
+                    copied.completeExceptionally(new IOException("Timeout waiting for work request " + workRequestId));
+                    return;
+                }
+                WorkRequest.Status status = client.getWorkRequest(GetWorkRequestRequest.builder()
+                                                                    .workRequestId(workRequestId)
+                                                                    .build())
+                                                  .getWorkRequest()
+                                                  .getStatus();
+                if (status == WorkRequest.Status.Completed) {
+                    copied.complete(Boolean.TRUE);
+                } else if (status == WorkRequest.Status.Failed || status == WorkRequest.Status.Canceled) {
+                    copied.complete(Boolean.FALSE);
+                } else {
+                    pollWorkRequest(workRequestId, Math.min(MAX_POLL_DELAY_MILLIS, (long) (delayMillis * POLL_BACKOFF_FACTOR)), deadline, copied);
+                }
+            } catch (Exception e) {
+                copied.completeExceptionally(e);
+            }
+        }), Math.max(0, Math.min(delayMillis, remainingMillis)), TimeUnit.MILLISECONDS);
+
+    }
+
+    @Override
+    public void deleteObject(String bucket, String objectName) {
+
+        client.deleteObject(DeleteObjectRequest.builder()
+                                .namespaceName(nameSpace)
+                                .bucketName(bucket)
+                                .objectName(objectName)
+                                .build());
+
+    }
+
+    @Override
+    public void renameObject(String bucket, String objectName, String newName, String eTag) {
+
+        client.renameObject(RenameObjectRequest.builder()
+                                .namespaceName(nameSpace)
+                                .bucketName(bucket)
+                                .renameObjectDetails(RenameObjectDetails.builder()
+                                                        .sourceName(objectName)
+                                                        .newName(newName)
+                                                        .srcObjIfMatchETag(eTag)
+                                                        .build())
+                                .build());
+
+    }
+
+    @Override
+    public ObjectListing listObjects(String bucket, String prefix, String start, int limit) {
+
+        ListObjects listObjects = client.listObjects(ListObjectsRequest.builder()
+                                                        .namespaceName(nameSpace)
+                                                        .bucketName(bucket)
+                                                        .prefix(prefix)
+                                                        .start(start)
+                                                        .limit(limit)
+                                                        .build())
+                                        .getListObjects();
+
+        List<String> objectNames = new ArrayList<>();
+        for (ObjectSummary objectSummary : listObjects.getObjects()) {
+            objectNames.add(objectSummary.getName());
+        }
+        return new ObjectListing(objectNames, listObjects.getNextStartWith());
+
+    }
+
+    @Override
+    public void close() {
+
+        try {
+            client.close();
+        } catch (Exception e) {
+            // Nothing to do, the container is going away
+        }
+        connectionManager.close();
+        scheduler.shutdownNow();
+        requestExecutor.shutdownNow();
+
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Checks run before an object is downloaded. The events are filtered using
+ * only their own fields, then the metadata of the object is checked against
+ * the limits of the function. When the content type does not tell a supported
+ * image format, or when the size in pixels is limited, the first bytes of the
+ * object are read with a ranged request to recognize its format and to read
+ * its size from the header, so files that are not images or that are too
+ * large are rejected without being downloaded and decoded.
+ *
+ * @version 1.1 17 Oct 2026
+ * @author PaoloB
+ */
+public class PreflightFilter {
+
+    // Events of the objects whose content can have changed
+    static final Set<String> EVENT_TYPES = Set.of("com.oraclecloud.objectstorage.createobject",
+                                                  "com.oraclecloud.objectstorage.updateobject");
+
+    // Bytes read from the start of an object to recognize its format, enough for the headers of most images
+    static final int SNIFF_BYTES = 64 * 1024;
+
+    // Content types of the images that can be decoded
+    private static final Set<String> IMAGE_CONTENT_TYPES = Set.of(ImageIO.getReaderMIMETypes());
+
+    private final StorageService storage;
+    private final String bucket;
+    private final Predicate<String> nameFilter;
+    private final long maxBytes;
+    private final long maxPixels;
+
+    /**
+     * Create the filter.
+     *
+     * @param storage    storage used to read the headers of the objects
+     * @param bucket     bucket whose events are processed
+     * @param nameFilter names of the objects to be processed
+     * @param maxBytes   maximum size of an object, 0 for no limit
+     * @param maxPixels  maximum size of an image in pixels, 0 for no limit
+     */
+    public PreflightFilter(StorageService storage, String bucket, Predicate<String> nameFilter, long maxBytes, long maxPixels) {
+
+        this.storage = storage;
+        this.bucket = bucket;
+        this.nameFilter = nameFilter;
+        this.maxBytes = maxBytes;
+        this.maxPixels = maxPixels;
+
+    }
+
+    /**
+     * Check an event using only its own fields, without any request to the storage.
+     *
+     * @param event      the event
+     * @param objectName name of the object of the event
+     * @return a skipped result, or null if the object must be processed
+     */
+    public ProcessingResult checkEvent(ObjectStorageCloudEvent event, String objectName) {
+
+        // A missing field does not exclude the event, only a different value does
+        if (event.getEventType() != null && !EVENT_TYPES.contains(event.getEventType())) {
+            return ProcessingResult.skipped(objectName, "Event type " + event.getEventType() + " is not processed");
+        }
+        Object additionalDetails = event.getData().get("additionalDetails");
+        if (additionalDetails instanceof Map) {
+            Object eventBucket = ((Map<?, ?>) additionalDetails).get("bucketName");
+            if (eventBucket != null && !bucket.equals(eventBucket.toString())) {
+                return ProcessingResult.skipped(objectName, "Event of bucket " + eventBucket);
+            }
+        }
+        // Names ending with a slash are the markers of the folders of the console
+        if (objectName.endsWith("/") || !nameFilter.test(objectName)) {
+            return ProcessingResult.skipped(objectName, "Filtered out");
+        }
+        return null;
+
+    }
+
+    /**
+     * Check an object before its download, reading its header only when the metadata is not enough.
+     *
+     * @param sourceBucket bucket that contains the object
+     * @param objectName   name of the object
+     * @param metadata     metadata of the object
+     * @return a rejected result, or null if the object must be processed
+     * @throws IOException if the header of the object cannot be read
+     */
+    public ProcessingResult checkObject(String sourceBucket, String objectName, ObjectMetadata metadata) throws IOException {
+
+        long length = metadata.getContentLength();
+        if (length == 0) {
+            return ProcessingResult.rejected(objectName, "Empty object");
+        }
+        if (maxBytes > 0 && length > maxBytes) {
+            return ProcessingResult.rejected(objectName, "Object of " + length + " bytes is larger than the limit of " + maxBytes + " bytes");
+        }
+
+        // A supported content type is trusted, unless the size of the image must be read anyway
+        boolean imageContentType = metadata.getContentType() != null && IMAGE_CONTENT_TYPES.contains(metadata.getContentType().toLowerCase());
+        if (imageContentType && maxPixels <= 0) {
+            return null;
+        }
+
+        byte[] header;
+        long headerLength = length < 0 ? SNIFF_BYTES : Math.min(length, SNIFF_BYTES);
+        try (InputStream in = storage.getObject(sourceBucket, objectName, 0, headerLength, metadata.getETag())) {
+            header = in.readNBytes((int) headerLength);
+        }
+        return checkHeader(objectName, header);
+
+    }
+
+    /**
+     * Recognize the format of an image from its first bytes and check its size.
+     *
+     * @param objectName name of the object
+     * @param header     first bytes of the object
+     * @return a rejected result, or null if the object must be processed
+     * @throws IOException if the header cannot be read
+     */
+    ProcessingResult checkHeader(String objectName, byte[] header) throws IOException {
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(header))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return ProcessingResult.rejected(objectName, "Unsupported image format");
+            }
+            if (maxPixels <= 0) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    return ProcessingResult.rejected(objectName, "Image of " + reader.getWidth(0) + "x" + reader.getHeight(0)
+                                                                 + " pixels is larger than the limit of " + maxPixels + " pixels");
+                }
+            } catch (IOException | RuntimeException e) {
+                // The size is not in the first bytes, as in the TIFF files with the directory at the end,
+                // the image is processed and its size is checked against the memory budget by the decoder
+            } finally {
+                reader.dispose();
+            }
+        }
+        return null;
+
+    }
+
+}
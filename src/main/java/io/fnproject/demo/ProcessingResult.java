@@ -0,0 +1,104 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+/**
+ * Outcome of the processing of a single object.
+ *
+ * @version 1.1 17 Oct 2026
+ * @author PaoloB
+ */
+public class ProcessingResult {
+
+    /**
+     * Status of the processing of an object.
+     */
+    public enum Status {
+        /** The renditions have been generated. */
+        PROCESSED,
+        /** The object did not need to be processed. */
+        SKIPPED,
+        /** The processing failed. */
+        FAILED,
+        /** The processing was not started because the time budget of the invocation was over. */
+        DEFERRED,
+        /** The object is not an image that can be processed, it will never be. */
+        REJECTED
+    }
+
+    private final String objectName;
+    private final Status status;
+    private final String message;
+
+    public ProcessingResult(String objectName, Status status, String message) {
+        this.objectName = objectName;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static ProcessingResult processed(String objectName) {
+        return new ProcessingResult(objectName, Status.PROCESSED, null);
+    }
+
+    public static ProcessingResult skipped(String objectName, String reason) {
+        return new ProcessingResult(objectName, Status.SKIPPED, reason);
+    }
+
+    public static ProcessingResult failed(String objectName, String message) {
+        return new ProcessingResult(objectName, Status.FAILED, message);
+    }
+
+    public static ProcessingResult deferred(String objectName) {
+        return new ProcessingResult(objectName, Status.DEFERRED, null);
+    }
+
+    public static ProcessingResult rejected(String objectName, String reason) {
+        return new ProcessingResult(objectName, Status.REJECTED, reason);
+    }
+
+    public String getObjectName() {
+        return this.objectName;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public String getMessage() {
+        return this.message;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+            " objectName='" + getObjectName() + "'" +
+            ", status='" + getStatus() + "'" +
+            ", message='" + getMessage() + "'" +
+            "}";
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+
+/**
+ * One of the scaled versions generated from an original image. A rendition is
+ * described by a size, a prefix for the name of the generated object and an
+ * output format, and it is written as <code>size[:prefix[:format]]</code>
+ * where size is one of:
+ * <ul>
+ * <li><code>256w</code> - width in pixels, the height keeps the aspect ratio</li>
+ * <li><code>256h</code> - height in pixels, the width keeps the aspect ratio</li>
+ * <li><code>0.5</code> - scaling factor applied to both width and height</li>
+ * </ul>
+ * The format <code>auto</code> selects JPEG or PNG for each image, see {@link FormatSelector}.
+ *
+ * @version 1.3 17 Oct 2026
+ * @author PaoloB
+ */
+public class Rendition {
+
+    private enum SizeKind { WIDTH, HEIGHT, FACTOR }
+
+    private final SizeKind sizeKind;
+    private final double size;
+    private final String prefix;
+    private final String format;
+    private final String contentType;
+
+    private Rendition(SizeKind sizeKind, double size, String prefix, String format) {
+        this.sizeKind = sizeKind;
+        this.size = size;
+        this.prefix = prefix;
+        this.format = format;
+        this.contentType = contentTypeOf(format);
+    }
+
+    /**
+     * Create a rendition that scales both width and height by the same factor.
+     *
+     * @param scalingFactor factor to scale the image, it should be < 1 to scale down
+     * @param prefix        prefix for the name of the generated object
+     * @param format        format of the generated object
+     * @return the rendition
+     */
+    public static Rendition ofScalingFactor(double scalingFactor, String prefix, String format) {
+        return new Rendition(SizeKind.FACTOR, scalingFactor, prefix, format);
+    }
+
+    /**
+     * Parse a comma separated list of renditions, for example <code>64w,256w:medium-,0.5:large-:png</code>.
+     * When not specified, the prefix is the size followed by a dash and the format is the default one.
+     * Each rendition must have its own prefix, otherwise the generated objects would overwrite each other.
+     *
+     * @param specification list of renditions
+     * @param defaultFormat format used by the renditions that do not specify it
+     * @return the renditions, sorted from the largest to the smallest on a square image
+     */
+    public static List<Rendition> parseList(String specification, String defaultFormat) {
+
+        List<Rendition> renditions = new ArrayList<>();
+        Set<String> prefixes = new HashSet<>();
+        for (String item : specification.split(",")) {
+            if (!item.isBlank()) {
+                Rendition rendition = parse(item.trim(), defaultFormat);
+                if (!prefixes.add(rendition.getPrefix())) {
+                    throw new IllegalArgumentException("Invalid rendition: " + item.trim() + ", the prefix " + rendition.getPrefix() + " is used by another rendition");
+                }
+                renditions.add(rendition);
+            }
+        }
+        return sortedBySize(renditions, new Dimension(10000, 10000));
+
+    }
+
+    /**
+     * Parse a single rendition.
+     *
+     * @param specification the rendition, <code>size[:prefix[:format]]</code>
+     * @param defaultFormat format used if the rendition does not specify it
+     * @return the rendition
+     */
+    public static Rendition parse(String specification, String defaultFormat) {
+
+        String[] parts = specification.split(":", -1);
+        String sizeSpecification = parts[0].trim().toLowerCase();
+        String prefix = parts.length > 1 && !parts[1].isEmpty() ? parts[1] : sizeSpecification + "-";
+        String format = parts.length > 2 && !parts[2].isEmpty() ? parts[2].trim().toLowerCase() : defaultFormat;
+
+        try {
+            if (sizeSpecification.endsWith("w")) {
+                return new Rendition(SizeKind.WIDTH, positive(Integer.parseInt(sizeSpecification.substring(0, sizeSpecification.length() - 1))), prefix, format);
+            } else if (sizeSpecification.endsWith("h")) {
+                return new Rendition(SizeKind.HEIGHT, positive(Integer.parseInt(sizeSpecification.substring(0, sizeSpecification.length() - 1))), prefix, format);
+            } else {
+                return new Rendition(SizeKind.FACTOR, positive(Double.parseDouble(sizeSpecification)), prefix, format);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid rendition: " + specification, e);
+        }
+
+    }
+
+    /**
+     * Sort the renditions of an image from the largest to the smallest, the order used to derive each one from the previous.
+     * The order depends on the aspect ratio of the image when widths and heights are mixed, for example 256w is
+     * larger than 256h on a landscape image and smaller on a portrait one.
+     *
+     * @param renditions the renditions to be sorted
+     * @param source     size of the original image
+     * @return a sorted copy of the list
+     */
+    public static List<Rendition> sortedBySize(List<Rendition> renditions, Dimension source) {
+
+        List<Rendition> sorted = new ArrayList<>(renditions);
+        sorted.sort(Comparator.comparingLong((Rendition rendition) -> {
+            Dimension target = rendition.targetSize(source);
+            return (long) target.width * target.height;
+        }).reversed());
+        return sorted;
+
+    }
+
+    /**
+     * Evaluate the size of this rendition.
+     *
+     * @param source size of the original image
+     * @return the size of the rendition, never smaller than 1x1
+     */
+    public Dimension targetSize(Dimension source) {
+
+        switch (sizeKind) {
+            case WIDTH:
+                return new Dimension((int) size, Math.max(1, (int) Math.round(source.height * size / source.width)));
+            case HEIGHT:
+                return new Dimension(Math.max(1, (int) Math.round(source.width * size / source.height)), (int) size);
+            default:
+                return new Dimension(Math.max(1, (int) Math.ceil(source.width * size)), Math.max(1, (int) Math.ceil(source.height * size)));
+        }
+
+    }
+
+    /**
+     * Get the size of the rendition as it is written in the configuration.
+     *
+     * @return the size, for example <code>256w</code>, <code>256h</code> or <code>0.5</code>
+     */
+    public String getSize() {
+        return sizeKind == SizeKind.WIDTH ? (int) size + "w" : sizeKind == SizeKind.HEIGHT ? (int) size + "h" : String.valueOf(size);
+    }
+
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    public String getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Get the MIME type of the generated objects.
+     *
+     * @return the MIME type declared by the ImageIO writer of the format, or null if the format is unknown or auto
+     */
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * Get the MIME type of a format.
+     *
+     * @param format the format
+     * @return the MIME type declared by the ImageIO writer of the format, or null if the format is unknown
+     */
+    static String contentTypeOf(String format) {
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (writers.hasNext()) {
+            String[] mimeTypes = writers.next().getOriginatingProvider().getMIMETypes();
+            if (mimeTypes != null && mimeTypes.length > 0) {
+                return mimeTypes[0];
+            }
+        }
+        return null;
+
+    }
+
+    private static double positive(double value) {
+        if (!(value > 0)) {
+            throw new IllegalArgumentException("Size must be positive: " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+            " size='" + getSize() + "'" +
+            ", prefix='" + getPrefix() + "'" +
+            ", format='" + getFormat() + "'" +
+            "}";
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Algorithm used to scale the decoded image to the size of a rendition.
+ *
+ * @version 1.1 17 Oct 2026
+ * @author PaoloB
+ */
+public interface Resampler {
+
+    /**
+     * Scale an image.
+     *
+     * @param source       image to be scaled
+     * @param targetWidth  width of the scaled image
+     * @param targetHeight height of the scaled image
+     * @return the scaled image
+     */
+    BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight);
+
+    /**
+     * Create the resampler selected by name: java2d, or one of the filters of {@link ResamplingFilter}.
+     *
+     * @param name name of the resampler, case insensitive
+     * @return the resampler
+     */
+    static Resampler forName(String name) {
+        return forName(name, null, 0);
+    }
+
+    /**
+     * Create the resampler selected by name, whose separable filters process the bands of rows in parallel.
+     *
+     * @param name         name of the resampler, case insensitive
+     * @param bandExecutor executor that processes the bands together with the calling thread
+     * @param parallelism  number of threads of the executor
+     * @return the resampler
+     */
+    static Resampler forName(String name, ExecutorService bandExecutor, int parallelism) {
+
+        if ("java2d".equalsIgnoreCase(name)) {
+            return new Java2DResampler();
+        }
+        return new SeparableResampler(ResamplingFilter.forName(name), bandExecutor, parallelism);
+
+    }
+
+}
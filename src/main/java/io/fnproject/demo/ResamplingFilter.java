@@ -0,0 +1,124 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+/**
+ * Reconstruction filters available to the {@link SeparableResampler}.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public enum ResamplingFilter {
+
+    /** Area average: each target pixel is the average of the source pixels it covers. */
+    BOX(0.5) {
+        @Override
+        double weight(double x) {
+            return x >= -0.5 && x < 0.5 ? 1.0 : 0.0;
+        }
+    },
+
+    /** Bilinear interpolation, applied after halving the image until it is less than twice the target size. */
+    BILINEAR(1.0) {
+        @Override
+        double weight(double x) {
+            x = Math.abs(x);
+            return x < 1.0 ? 1.0 - x : 0.0;
+        }
+    },
+
+    /** Mitchell-Netravali cubic with B = C = 1/3, a good balance between sharpness and ringing. */
+    MITCHELL(2.0) {
+        @Override
+        double weight(double x) {
+            final double b = 1.0 / 3.0;
+            final double c = 1.0 / 3.0;
+            x = Math.abs(x);
+            if (x < 1.0) {
+                return ((12 - 9 * b - 6 * c) * x * x * x + (-18 + 12 * b + 6 * c) * x * x + (6 - 2 * b)) / 6.0;
+            } else if (x < 2.0) {
+                return ((-b - 6 * c) * x * x * x + (6 * b + 30 * c) * x * x + (-12 * b - 48 * c) * x + (8 * b + 24 * c)) / 6.0;
+            }
+            return 0.0;
+        }
+    },
+
+    /** Lanczos windowed sinc with three lobes, the sharpest of the filters. */
+    LANCZOS(3.0) {
+        @Override
+        double weight(double x) {
+            if (x == 0.0) {
+                return 1.0;
+            }
+            if (x <= -3.0 || x >= 3.0) {
+                return 0.0;
+            }
+            double pix = Math.PI * x;
+            return 3.0 * Math.sin(pix) * Math.sin(pix / 3.0) / (pix * pix);
+        }
+    };
+
+    private final double support;
+
+    ResamplingFilter(double support) {
+        this.support = support;
+    }
+
+    /**
+     * Get the radius of the filter, in source pixels, when the image is not scaled.
+     *
+     * @return the support of the filter
+     */
+    double support() {
+        return support;
+    }
+
+    /**
+     * Evaluate the filter.
+     *
+     * @param x distance from the center of the filter, in source pixels
+     * @return the weight of a sample at that distance
+     */
+    abstract double weight(double x);
+
+    /**
+     * Get a filter by name.
+     *
+     * @param name the name of the filter, case insensitive
+     * @return the filter
+     */
+    public static ResamplingFilter forName(String name) {
+
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown resampling filter " + name + ", please choose one among: java2d, box, bilinear, mitchell, lanczos", e);
+        }
+
+    }
+
+}
@@ -0,0 +1,885 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resampler that scales the image with a separable filter, first along the
+ * rows and then along the columns, working directly on the data of the
+ * raster. The target image is split in bands of rows that are processed in
+ * parallel, by the calling thread and by the threads of an executor owned by
+ * the caller, each band filters horizontally only the source rows it needs, so
+ * the temporary buffers stay small and no allocation is made per pixel.
+ * The thumbnails keep the layout of the original: gray, 3-byte BGR, packed
+ * RGB and the images with alpha are filtered by their own inner loops, while
+ * indexed and 16-bit images are read through the palette or scaled to 8 bits
+ * and written in the nearest 8-bit layout.
+ *
+ * @version 1.2 17 Oct 2026
+ * @author PaoloB
+ */
+public class SeparableResampler implements Resampler {
+
+    // Number of target rows processed by each parallel task
+    private static final int BAND_ROWS = 32;
+
+    private final ResamplingFilter filter;
+    private final ExecutorService bandExecutor;
+    private final int parallelism;
+
+    /**
+     * Create a resampler that processes the bands on the calling thread.
+     *
+     * @param filter the reconstruction filter
+     */
+    public SeparableResampler(ResamplingFilter filter) {
+        this(filter, null, 0);
+    }
+
+    /**
+     * Create a resampler that processes the bands in parallel.
+     *
+     * @param filter       the reconstruction filter
+     * @param bandExecutor executor that processes the bands together with the calling thread, it must not be used
+     *                     by tasks that wait for the resampler
+     * @param parallelism  number of threads of the executor
+     */
+    public SeparableResampler(ResamplingFilter filter, ExecutorService bandExecutor, int parallelism) {
+        this.filter = filter;
+        this.bandExecutor = bandExecutor;
+        this.parallelism = bandExecutor == null ? 0 : parallelism;
+    }
+
+    public ResamplingFilter getFilter() {
+        return this.filter;
+    }
+
+    @Override
+    public BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+
+        BufferedImage image = Pixels.of(source) != null ? source : toSupportedType(source);
+
+        if (filter == ResamplingFilter.BILINEAR) {
+            // Halve the image with an exact area average until it is less than twice the target size
+            while (image.getWidth() / 2 >= targetWidth && image.getHeight() / 2 >= targetHeight) {
+                image = resample(image, (image.getWidth() + 1) / 2, (image.getHeight() + 1) / 2, ResamplingFilter.BOX);
+            }
+        }
+
+        return resample(image, targetWidth, targetHeight, filter);
+
+    }
+
+    /**
+     * Convert an image with a layout not handled by the inner loops, the only step that goes through the color model.
+     */
+    private static BufferedImage toSupportedType(BufferedImage source) {
+
+        BufferedImage converted = new BufferedImage(source.getWidth(), source.getHeight(),
+                                                    source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics2D = converted.createGraphics();
+        graphics2D.setComposite(AlphaComposite.Src);
+        graphics2D.drawImage(source, 0, 0, null);
+        graphics2D.dispose();
+        return converted;
+
+    }
+
+    private BufferedImage resample(BufferedImage sourceImage, int targetWidth, int targetHeight, ResamplingFilter filter) {
+
+        Pixels source = Pixels.of(sourceImage);
+        BufferedImage targetImage = source.createTarget(sourceImage, targetWidth, targetHeight);
+        Pixels target = Pixels.of(targetImage);
+
+        Contributions horizontal = Contributions.of(sourceImage.getWidth(), targetWidth, filter);
+        Contributions vertical = Contributions.of(sourceImage.getHeight(), targetHeight, filter);
+
+        int bands = (targetHeight + BAND_ROWS - 1) / BAND_ROWS;
+        AtomicInteger nextBand = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int band = nextBand.getAndIncrement(); band < bands; band = nextBand.getAndIncrement()) {
+                resampleBand(band, source, target, horizontal, vertical, targetWidth, targetHeight);
+            }
+        };
+
+        // The calling thread takes the bands as well, so an image is scaled even when the executor is busy
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 0; i < Math.min(parallelism, bands - 1); i++) {
+            helpers.add(bandExecutor.submit(worker));
+        }
+        worker.run();
+        for (Future<?> helper : helpers) {
+            // A helper not yet started has no band left to process
+            if (!helper.cancel(false)) {
+                await(helper);
+            }
+        }
+
+        return targetImage;
+
+    }
+
+    private static void await(Future<?> helper) {
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    helper.get();
+                    return;
+                } catch (InterruptedException e) {
+                    // The band is written to the target image, it must be completed before the image is returned
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    private static void resampleBand(int band, Pixels source, Pixels target, Contributions horizontal, Contributions vertical,
+                                     int targetWidth, int targetHeight) {
+
+        int firstRow = band * BAND_ROWS;
+        int lastRow = Math.min(targetHeight, firstRow + BAND_ROWS) - 1;
+        int firstSourceRow = vertical.minIndex(firstRow, lastRow);
+        int lastSourceRow = vertical.maxIndex(firstRow, lastRow);
+
+        // Filter horizontally the source rows needed by this band
+        int rowLength = targetWidth * source.channels;
+        float[] buffer = new float[(lastSourceRow - firstSourceRow + 1) * rowLength];
+        for (int y = firstSourceRow; y <= lastSourceRow; y++) {
+            source.filterRow(y, horizontal, buffer, (y - firstSourceRow) * rowLength);
+        }
+
+        // Filter vertically into the target rows
+        for (int y = firstRow; y <= lastRow; y++) {
+            target.storeRow(y, vertical, buffer, firstSourceRow, rowLength);
+        }
+
+    }
+
+    /**
+     * Weights of the source samples that contribute to each target sample, along one axis.
+     */
+    static final class Contributions {
+
+        final int stride;
+        final int[] count;
+        final int[] index;
+        final float[] weights;
+
+        private Contributions(int targetSize, int stride) {
+            this.stride = stride;
+            this.count = new int[targetSize];
+            this.index = new int[targetSize * stride];
+            this.weights = new float[targetSize * stride];
+        }
+
+        static Contributions of(int sourceSize, int targetSize, ResamplingFilter filter) {
+
+            double ratio = (double) sourceSize / targetSize;
+            Contributions contributions;
+
+            if (filter == ResamplingFilter.BOX) {
+                // Exact area average: the weight is the fraction of the source pixel covered by the target pixel
+                contributions = new Contributions(targetSize, (int) Math.ceil(ratio) + 2);
+                for (int i = 0; i < targetSize; i++) {
+                    double low = i * ratio;
+                    double high = low + ratio;
+                    int last = Math.min(sourceSize - 1, (int) Math.ceil(high) - 1);
+                    for (int j = (int) Math.floor(low); j <= last; j++) {
+                        contributions.add(i, j, (float) (Math.min(high, j + 1.0) - Math.max(low, j)));
+                    }
+                }
+            } else {
+                // The filter is widened when scaling down, so that it averages all the covered source pixels
+                double filterScale = Math.max(1.0, ratio);
+                double support = filter.support() * filterScale;
+                contributions = new Contributions(targetSize, (int) Math.ceil(2 * support) + 2);
+                for (int i = 0; i < targetSize; i++) {
+                    double center = (i + 0.5) * ratio - 0.5;
+                    int last = (int) Math.floor(center + support);
+                    for (int j = (int) Math.ceil(center - support); j <= last; j++) {
+                        double weight = filter.weight((j - center) / filterScale);
+                        if (weight != 0.0) {
+                            contributions.add(i, Math.max(0, Math.min(sourceSize - 1, j)), (float) weight);
+                        }
+                    }
+                }
+            }
+
+            contributions.normalize();
+            return contributions;
+
+        }
+
+        private void add(int target, int source, float weight) {
+
+            if (weight == 0.0f) {
+                return;
+            }
+            int position = target * stride + count[target]++;
+            index[position] = source;
+            weights[position] = weight;
+
+        }
+
+        private void normalize() {
+
+            for (int i = 0; i < count.length; i++) {
+                float sum = 0.0f;
+                for (int k = 0; k < count[i]; k++) {
+                    sum += weights[i * stride + k];
+                }
+                if (sum != 0.0f) {
+                    for (int k = 0; k < count[i]; k++) {
+                        weights[i * stride + k] /= sum;
+                    }
+                }
+            }
+
+        }
+
+        int minIndex(int first, int last) {
+
+            int min = Integer.MAX_VALUE;
+            for (int i = first; i <= last; i++) {
+                for (int k = 0; k < count[i]; k++) {
+                    min = Math.min(min, index[i * stride + k]);
+                }
+            }
+            return min;
+
+        }
+
+        int maxIndex(int first, int last) {
+
+            int max = Integer.MIN_VALUE;
+            for (int i = first; i <= last; i++) {
+                for (int k = 0; k < count[i]; k++) {
+                    max = Math.max(max, index[i * stride + k]);
+                }
+            }
+            return max;
+
+        }
+
+    }
+
+    /**
+     * Direct access to the data of the raster of the layouts handled by the inner loops. The rows are
+     * filtered into a buffer of values from 0 to 255, one for each band of the raster, with the color
+     * channels premultiplied by alpha and the alpha channel last.
+     */
+    abstract static class Pixels {
+
+        final int channels;
+        final boolean alpha;
+
+        Pixels(int channels, boolean alpha) {
+            this.channels = channels;
+            this.alpha = alpha;
+        }
+
+        /**
+         * Get the pixels of an image.
+         *
+         * @param image the image
+         * @return the pixels, or null if the layout of the image is not handled
+         */
+        static Pixels of(BufferedImage image) {
+
+            Raster raster = image.getRaster();
+            ColorModel colorModel = image.getColorModel();
+            if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0 || colorModel.isAlphaPremultiplied()) {
+                return null;
+            }
+            SampleModel sampleModel = raster.getSampleModel();
+            DataBuffer dataBuffer = raster.getDataBuffer();
+
+            if (colorModel instanceof IndexColorModel) {
+                return IndexedPixels.of((IndexColorModel) colorModel, sampleModel, dataBuffer);
+            }
+            if (colorModel instanceof ComponentColorModel) {
+                return InterleavedPixels.of(colorModel, sampleModel, dataBuffer);
+            }
+            if ((image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)
+                && sampleModel instanceof SinglePixelPackedSampleModel) {
+                return new PackedPixels((DataBufferInt) dataBuffer, (SinglePixelPackedSampleModel) sampleModel,
+                                        image.getType() == BufferedImage.TYPE_INT_ARGB);
+            }
+            return null;
+
+        }
+
+        /**
+         * Create the image that receives the filtered rows of these pixels.
+         */
+        abstract BufferedImage createTarget(BufferedImage source, int width, int height);
+
+        /**
+         * Filter a source row along the x axis into the buffer, with the color channels premultiplied by alpha.
+         */
+        abstract void filterRow(int y, Contributions horizontal, float[] buffer, int bufferOffset);
+
+        /**
+         * Filter the buffer along the y axis into a target row, converting back from premultiplied alpha.
+         */
+        abstract void storeRow(int y, Contributions vertical, float[] buffer, int firstSourceRow, int rowLength);
+
+        /**
+         * Create an image with the same layout of another one.
+         */
+        static BufferedImage sameLayout(BufferedImage source, int width, int height) {
+
+            if (source.getType() != BufferedImage.TYPE_CUSTOM) {
+                return new BufferedImage(width, height, source.getType());
+            }
+            ColorModel colorModel = source.getColorModel();
+            return new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(width, height), false, null);
+
+        }
+
+        static int clamp(float value) {
+            int rounded = Math.round(value);
+            return rounded < 0 ? 0 : rounded > 255 ? 255 : rounded;
+        }
+
+    }
+
+    /**
+     * Packed RGB and ARGB integers.
+     */
+    static final class PackedPixels extends Pixels {
+
+        private final int[] ints;
+        private final int offset;
+        private final int scanlineStride;
+
+        PackedPixels(DataBufferInt dataBuffer, SinglePixelPackedSampleModel sampleModel, boolean alpha) {
+            super(alpha ? 4 : 3, alpha);
+            this.ints = dataBuffer.getData();
+            this.offset = dataBuffer.getOffset();
+            this.scanlineStride = sampleModel.getScanlineStride();
+        }
+
+        @Override
+        BufferedImage createTarget(BufferedImage source, int width, int height) {
+            return new BufferedImage(width, height, source.getType());
+        }
+
+        @Override
+        void filterRow(int y, Contributions horizontal, float[] buffer, int bufferOffset) {
+
+            int rowOffset = offset + y * scanlineStride;
+            int position = bufferOffset;
+            int targetWidth = horizontal.count.length;
+
+            for (int x = 0; x < targetWidth; x++) {
+                float r = 0.0f;
+                float g = 0.0f;
+                float b = 0.0f;
+                float a = 0.0f;
+                int base = x * horizontal.stride;
+                int end = base + horizontal.count[x];
+                for (int k = base; k < end; k++) {
+                    int pixel = ints[rowOffset + horizontal.index[k]];
+                    float weight = horizontal.weights[k];
+                    if (alpha) {
+                        float pixelAlpha = pixel >>> 24;
+                        a += weight * pixelAlpha;
+                        weight *= pixelAlpha * (1.0f / 255.0f);
+                    }
+                    r += weight * ((pixel >> 16) & 0xff);
+                    g += weight * ((pixel >> 8) & 0xff);
+                    b += weight * (pixel & 0xff);
+                }
+                buffer[position++] = r;
+                buffer[position++] = g;
+                buffer[position++] = b;
+                if (alpha) {
+                    buffer[position++] = a;
+                }
+            }
+
+        }
+
+        @Override
+        void storeRow(int y, Contributions vertical, float[] buffer, int firstSourceRow, int rowLength) {
+
+            int rowOffset = offset + y * scanlineStride;
+            int base = y * vertical.stride;
+            int end = base + vertical.count[y];
+            int targetWidth = rowLength / channels;
+
+            for (int x = 0; x < targetWidth; x++) {
+                float r = 0.0f;
+                float g = 0.0f;
+                float b = 0.0f;
+                float a = 0.0f;
+                int column = x * channels;
+                for (int k = base; k < end; k++) {
+                    int position = (vertical.index[k] - firstSourceRow) * rowLength + column;
+                    float weight = vertical.weights[k];
+                    r += weight * buffer[position];
+                    g += weight * buffer[position + 1];
+                    b += weight * buffer[position + 2];
+                    if (alpha) {
+                        a += weight * buffer[position + 3];
+                    }
+                }
+                int pixel;
+                if (alpha) {
+                    int pixelAlpha = clamp(a);
+                    float unpremultiply = pixelAlpha == 0 ? 0.0f : 255.0f / pixelAlpha;
+                    pixel = pixelAlpha << 24 | clamp(r * unpremultiply) << 16 | clamp(g * unpremultiply) << 8 | clamp(b * unpremultiply);
+                } else {
+                    pixel = 0xff000000 | clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+                }
+                ints[rowOffset + x] = pixel;
+            }
+
+        }
+
+    }
+
+    /**
+     * Interleaved 8-bit or 16-bit samples of gray or sRGB images, with or without alpha, such as the
+     * 3-byte BGR images of the JPEG decoder. The 16-bit samples are only read, scaled to 8 bits.
+     */
+    static final class InterleavedPixels extends Pixels {
+
+        private final byte[] bytes;
+        private final short[] shorts;
+        private final int offset;
+        private final int scanlineStride;
+        private final int pixelStride;
+        private final int[] bandOffsets;
+
+        private InterleavedPixels(byte[] bytes, short[] shorts, int offset, PixelInterleavedSampleModel sampleModel, boolean alpha) {
+            super(sampleModel.getNumBands(), alpha);
+            this.bytes = bytes;
+            this.shorts = shorts;
+            this.offset = offset;
+            this.scanlineStride = sampleModel.getScanlineStride();
+            this.pixelStride = sampleModel.getPixelStride();
+            this.bandOffsets = sampleModel.getBandOffsets();
+        }
+
+        static InterleavedPixels of(ColorModel colorModel, SampleModel sampleModel, DataBuffer dataBuffer) {
+
+            ColorSpace colorSpace = colorModel.getColorSpace();
+            if (!(sampleModel instanceof PixelInterleavedSampleModel) || sampleModel.getNumBands() != colorModel.getNumComponents()
+                || !(colorSpace.isCS_sRGB() || colorSpace == ColorSpace.getInstance(ColorSpace.CS_GRAY))) {
+                return null;
+            }
+            int sampleSize = dataBuffer instanceof DataBufferByte ? 8 : dataBuffer instanceof DataBufferUShort ? 16 : 0;
+            for (int band = 0; band < sampleModel.getNumBands(); band++) {
+                if (sampleModel.getSampleSize(band) != sampleSize || colorModel.getComponentSize(band) != sampleSize) {
+                    return null;
+                }
+            }
+
+            PixelInterleavedSampleModel interleavedSampleModel = (PixelInterleavedSampleModel) sampleModel;
+            if (sampleSize == 8) {
+                return new InterleavedPixels(((DataBufferByte) dataBuffer).getData(), null, dataBuffer.getOffset(), interleavedSampleModel, colorModel.hasAlpha());
+            }
+            return new InterleavedPixels(null, ((DataBufferUShort) dataBuffer).getData(), dataBuffer.getOffset(), interleavedSampleModel, colorModel.hasAlpha());
+
+        }
+
+        @Override
+        BufferedImage createTarget(BufferedImage source, int width, int height) {
+
+            if (bytes != null) {
+                return sameLayout(source, width, height);
+            }
+            switch (channels) {
+                case 1:
+                    return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+                case 2:
+                    ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY), true, false,
+                                                                             Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+                    return new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(width, height), false, null);
+                case 3:
+                    return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+                default:
+                    return new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+            }
+
+        }
+
+        @Override
+        void filterRow(int y, Contributions horizontal, float[] buffer, int bufferOffset) {
+
+            int rowOffset = offset + y * scanlineStride;
+            int position = bufferOffset;
+            int targetWidth = horizontal.count.length;
+
+            if (shorts != null) {
+                filterWideRow(rowOffset, horizontal, buffer, bufferOffset);
+            } else if (channels == 1) {
+                for (int x = 0; x < targetWidth; x++) {
+                    float v = 0.0f;
+                    int base = x * horizontal.stride;
+                    int end = base + horizontal.count[x];
+                    for (int k = base; k < end; k++) {
+                        v += horizontal.weights[k] * (bytes[rowOffset + horizontal.index[k] * pixelStride + bandOffsets[0]] & 0xff);
+                    }
+                    buffer[position++] = v;
+                }
+            } else if (!alpha) {
+                int red = bandOffsets[0];
+                int green = bandOffsets[1];
+                int blue = bandOffsets[2];
+                for (int x = 0; x < targetWidth; x++) {
+                    float r = 0.0f;
+                    float g = 0.0f;
+                    float b = 0.0f;
+                    int base = x * horizontal.stride;
+                    int end = base + horizontal.count[x];
+                    for (int k = base; k < end; k++) {
+                        int pixel = rowOffset + horizontal.index[k] * pixelStride;
+                        float weight = horizontal.weights[k];
+                        r += weight * (bytes[pixel + red] & 0xff);
+                        g += weight * (bytes[pixel + green] & 0xff);
+                        b += weight * (bytes[pixel + blue] & 0xff);
+                    }
+                    buffer[position++] = r;
+                    buffer[position++] = g;
+                    buffer[position++] = b;
+                }
+            } else {
+                // Gray or RGB followed by alpha
+                boolean color = channels == 4;
+                int first = bandOffsets[0];
+                int second = color ? bandOffsets[1] : 0;
+                int third = color ? bandOffsets[2] : 0;
+                int alphaOffset = bandOffsets[channels - 1];
+                for (int x = 0; x < targetWidth; x++) {
+                    float c0 = 0.0f;
+                    float c1 = 0.0f;
+                    float c2 = 0.0f;
+                    float a = 0.0f;
+                    int base = x * horizontal.stride;
+                    int end = base + horizontal.count[x];
+                    for (int k = base; k < end; k++) {
+                        int pixel = rowOffset + horizontal.index[k] * pixelStride;
+                        float pixelAlpha = bytes[pixel + alphaOffset] & 0xff;
+                        float weight = horizontal.weights[k];
+                        a += weight * pixelAlpha;
+                        weight *= pixelAlpha * (1.0f / 255.0f);
+                        c0 += weight * (bytes[pixel + first] & 0xff);
+                        if (color) {
+                            c1 += weight * (bytes[pixel + second] & 0xff);
+                            c2 += weight * (bytes[pixel + third] & 0xff);
+                        }
+                    }
+                    buffer[position++] = c0;
+                    if (color) {
+                        buffer[position++] = c1;
+                        buffer[position++] = c2;
+                    }
+                    buffer[position++] = a;
+                }
+            }
+
+        }
+
+        /**
+         * Filter a row of 16-bit samples, scaling them to 8 bits.
+         */
+        private void filterWideRow(int rowOffset, Contributions horizontal, float[] buffer, int bufferOffset) {
+
+            int position = bufferOffset;
+            int targetWidth = horizontal.count.length;
+            int colors = alpha ? channels - 1 : channels;
+            float[] sums = new float[channels];
+
+            for (int x = 0; x < targetWidth; x++) {
+                Arrays.fill(sums, 0.0f);
+                int base = x * horizontal.stride;
+                int end = base + horizontal.count[x];
+                for (int k = base; k < end; k++) {
+                    int pixel = rowOffset + horizontal.index[k] * pixelStride;
+                    float weight = horizontal.weights[k];
+                    if (alpha) {
+                        float pixelAlpha = shorts[pixel + bandOffsets[colors]] & 0xffff;
+                        sums[colors] += weight * pixelAlpha;
+                        weight *= pixelAlpha * (1.0f / 65535.0f);
+                    }
+                    for (int c = 0; c < colors; c++) {
+                        sums[c] += weight * (shorts[pixel + bandOffsets[c]] & 0xffff);
+                    }
+                }
+                for (int c = 0; c < channels; c++) {
+                    buffer[position++] = sums[c] * (255.0f / 65535.0f);
+                }
+            }
+
+        }
+
+        @Override
+        void storeRow(int y, Contributions vertical, float[] buffer, int firstSourceRow, int rowLength) {
+
+            int rowOffset = offset + y * scanlineStride;
+            int base = y * vertical.stride;
+            int end = base + vertical.count[y];
+            int targetWidth = rowLength / channels;
+            int colors = channels - 1;
+
+            if (channels == 1) {
+                for (int x = 0; x < targetWidth; x++) {
+                    float v = 0.0f;
+                    for (int k = base; k < end; k++) {
+                        v += vertical.weights[k] * buffer[(vertical.index[k] - firstSourceRow) * rowLength + x];
+                    }
+                    bytes[rowOffset + x * pixelStride + bandOffsets[0]] = (byte) clamp(v);
+                }
+                return;
+            }
+            if (channels == 3) {
+                int red = bandOffsets[0];
+                int green = bandOffsets[1];
+                int blue = bandOffsets[2];
+                for (int x = 0; x < targetWidth; x++) {
+                    float r = 0.0f;
+                    float g = 0.0f;
+                    float b = 0.0f;
+                    int column = x * 3;
+                    for (int k = base; k < end; k++) {
+                        int position = (vertical.index[k] - firstSourceRow) * rowLength + column;
+                        float weight = vertical.weights[k];
+                        r += weight * buffer[position];
+                        g += weight * buffer[position + 1];
+                        b += weight * buffer[position + 2];
+                    }
+                    int pixel = rowOffset + x * pixelStride;
+                    bytes[pixel + red] = (byte) clamp(r);
+                    bytes[pixel + green] = (byte) clamp(g);
+                    bytes[pixel + blue] = (byte) clamp(b);
+                }
+                return;
+            }
+
+            // Gray or RGB followed by alpha
+            for (int x = 0; x < targetWidth; x++) {
+                int pixel = rowOffset + x * pixelStride;
+                int column = x * channels;
+                float a = 0.0f;
+                for (int k = base; k < end; k++) {
+                    a += vertical.weights[k] * buffer[(vertical.index[k] - firstSourceRow) * rowLength + column + colors];
+                }
+                int pixelAlpha = clamp(a);
+                float unpremultiply = pixelAlpha == 0 ? 0.0f : 255.0f / pixelAlpha;
+                bytes[pixel + bandOffsets[colors]] = (byte) pixelAlpha;
+                for (int c = 0; c < colors; c++) {
+                    float v = 0.0f;
+                    for (int k = base; k < end; k++) {
+                        v += vertical.weights[k] * buffer[(vertical.index[k] - firstSourceRow) * rowLength + column + c];
+                    }
+                    bytes[pixel + bandOffsets[c]] = (byte) clamp(v * unpremultiply);
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Indexed images, such as GIF and 8-bit PNG images, read through the palette. The filtered colors
+     * are not in the palette anymore, so they are written as gray, RGB or ARGB depending on the palette.
+     */
+    static final class IndexedPixels extends Pixels {
+
+        private final byte[] bytes;
+        private final int offset;
+        private final int scanlineStride;
+        private final int bits;
+        private final int bitOffset;
+        private final int[] palette;
+
+        private IndexedPixels(byte[] bytes, int offset, int scanlineStride, int bits, int bitOffset, int[] palette, int channels) {
+            super(channels, channels == 4);
+            this.bytes = bytes;
+            this.offset = offset;
+            this.scanlineStride = scanlineStride;
+            this.bits = bits;
+            this.bitOffset = bitOffset;
+            this.palette = palette;
+        }
+
+        static IndexedPixels of(IndexColorModel colorModel, SampleModel sampleModel, DataBuffer dataBuffer) {
+
+            if (!(dataBuffer instanceof DataBufferByte) || sampleModel.getNumBands() != 1) {
+                return null;
+            }
+            int offset;
+            int scanlineStride;
+            int bits;
+            int bitOffset;
+            if (sampleModel instanceof MultiPixelPackedSampleModel) {
+                // 1, 2 or 4 bits per pixel
+                MultiPixelPackedSampleModel packedSampleModel = (MultiPixelPackedSampleModel) sampleModel;
+                offset = dataBuffer.getOffset();
+                scanlineStride = packedSampleModel.getScanlineStride();
+                bits = packedSampleModel.getPixelBitStride();
+                bitOffset = packedSampleModel.getDataBitOffset();
+            } else if (sampleModel instanceof PixelInterleavedSampleModel && ((PixelInterleavedSampleModel) sampleModel).getPixelStride() == 1) {
+                PixelInterleavedSampleModel interleavedSampleModel = (PixelInterleavedSampleModel) sampleModel;
+                offset = dataBuffer.getOffset() + interleavedSampleModel.getBandOffsets()[0];
+                scanlineStride = interleavedSampleModel.getScanlineStride();
+                bits = 8;
+                bitOffset = 0;
+            } else {
+                return null;
+            }
+
+            // The indexes outside of the palette are black
+            int[] colors = new int[colorModel.getMapSize()];
+            colorModel.getRGBs(colors);
+            int[] palette = new int[1 << bits];
+            Arrays.fill(palette, 0xff000000);
+            System.arraycopy(colors, 0, palette, 0, Math.min(colors.length, palette.length));
+
+            return new IndexedPixels(((DataBufferByte) dataBuffer).getData(), offset, scanlineStride, bits, bitOffset, palette, channels(colorModel));
+
+        }
+
+        /**
+         * Get the number of channels of the colors of a palette: 1 for an opaque gray palette, 4 with transparency, otherwise 3.
+         */
+        private static int channels(IndexColorModel colorModel) {
+
+            if (colorModel.getTransparency() != Transparency.OPAQUE) {
+                return 4;
+            }
+            for (int i = 0; i < colorModel.getMapSize(); i++) {
+                if (colorModel.getRed(i) != colorModel.getGreen(i) || colorModel.getRed(i) != colorModel.getBlue(i)) {
+                    return 3;
+                }
+            }
+            return 1;
+
+        }
+
+        @Override
+        BufferedImage createTarget(BufferedImage source, int width, int height) {
+            return new BufferedImage(width, height, channels == 1 ? BufferedImage.TYPE_BYTE_GRAY
+                                                    : alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        }
+
+        private int color(int rowOffset, int x) {
+
+            if (bits == 8) {
+                return palette[bytes[rowOffset + x] & 0xff];
+            }
+            int bit = bitOffset + x * bits;
+            return palette[(bytes[rowOffset + (bit >> 3)] >> (8 - bits - (bit & 7))) & (palette.length - 1)];
+
+        }
+
+        @Override
+        void filterRow(int y, Contributions horizontal, float[] buffer, int bufferOffset) {
+
+            int rowOffset = offset + y * scanlineStride;
+            int position = bufferOffset;
+            int targetWidth = horizontal.count.length;
+
+            for (int x = 0; x < targetWidth; x++) {
+                float r = 0.0f;
+                float g = 0.0f;
+                float b = 0.0f;
+                float a = 0.0f;
+                int base = x * horizontal.stride;
+                int end = base + horizontal.count[x];
+                for (int k = base; k < end; k++) {
+                    int pixel = color(rowOffset, horizontal.index[k]);
+                    float weight = horizontal.weights[k];
+                    if (alpha) {
+                        float pixelAlpha = pixel >>> 24;
+                        a += weight * pixelAlpha;
+                        weight *= pixelAlpha * (1.0f / 255.0f);
+                    }
+                    r += weight * ((pixel >> 16) & 0xff);
+                    g += weight * ((pixel >> 8) & 0xff);
+                    b += weight * (pixel & 0xff);
+                }
+                // The gray palettes have the same value in the three components
+                buffer[position++] = r;
+                if (channels > 1) {
+                    buffer[position++] = g;
+                    buffer[position++] = b;
+                }
+                if (alpha) {
+                    buffer[position++] = a;
+                }
+            }
+
+        }
+
+        @Override
+        void storeRow(int y, Contributions vertical, float[] buffer, int firstSourceRow, int rowLength) {
+            throw new UnsupportedOperationException("Indexed images are written as gray, RGB or ARGB");
+        }
+
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Abstraction over the object store used by the thumbnail generator.
+ * An instance is created once per container and shared by all the invocations,
+ * so implementations must be thread safe.
+ *
+ * @version 1.5 17 Oct 2026
+ * @author PaoloB
+ */
+public interface StorageService extends AutoCloseable {
+
+    /**
+     * Open a stream on the content of an object.
+     *
+     * @param bucket     name of the bucket
+     * @param objectName name of the object
+     * @return the content of the object, the caller is responsible for closing it
+     * @throws IOException if the object cannot be read
+     */
+    InputStream getObject(String bucket, String objectName) throws IOException;
+
+    /**
+     * Open a stream on a range of the content of an object.
+     *
+     * @param bucket     name of the bucket
+     * @param objectName name of the object
+     * @param offset     position of the first byte of the range
+     * @param length     number of bytes of the range, it is truncated at the end of the object
+     * @param eTag       entity tag the object must have, so that the ranges of an object come from the same content; may be null
+     * @return the content of the range, the caller is responsible for closing it
+     * @throws IOException if the object cannot be read, or if it has changed
+     */
+    InputStream getObject(String bucket, String objectName, long offset, long length, String eTag) throws IOException;
+
+    /**
+     * Read the metadata of an object without transferring its content.
+     *
+     * @param bucket     name of the bucket
+     * @param objectName name of the object
+     * @return the metadata of the object, or null if the object does not exist
+     * @throws IOException if the metadata cannot be read
+     */
+    ObjectMetadata headObject(String bucket, String objectName) throws IOException;
+
+    /**
+     * Store an object, replacing it if it already exists.
+     *
+     * @param bucket        name of the bucket
+     * @param objectName    name of the object
+     * @param body          content of the object
+     * @param contentLength exact length of the content in bytes
+     * @param contentType   MIME type of the content, may be null
+     * @param userMetadata  user defined metadata, may be null
+     * @throws IOException if the object cannot be written
+     */
+    void putObject(String bucket, String objectName, InputStream body, long contentLength, String contentType, Map<String, String> userMetadata) throws IOException;
+
+    /**
+     * Start a multipart upload. The object is created only when the upload is committed.
+     *
+     * @param bucket       name of the bucket
+     * @param objectName   name of the object
+     * @param contentType  MIME type of the content, may be null
+     * @param userMetadata user defined metadata, may be null
+     * @return the identifier of the upload
+     * @throws IOException if the upload cannot be started
+     */
+    String createMultipartUpload(String bucket, String objectName, String contentType, Map<String, String> userMetadata) throws IOException;
+
+    /**
+     * Upload a part of a multipart upload. The parts of the same upload can be uploaded in parallel.
+     *
+     * @param bucket        name of the bucket
+     * @param objectName    name of the object
+     * @param uploadId      identifier of the upload
+     * @param partNumber    number of the part, starting from 1
+     * @param body          content of the part
+     * @param contentLength exact length of the part in bytes
+     * @return the entity tag of the part, needed to commit the upload
+     * @throws IOException if the part cannot be uploaded
+     */
+    String uploadPart(String bucket, String objectName, String uploadId, int partNumber, InputStream body, long contentLength) throws IOException;
+
+    /**
+     * Commit a multipart upload, creating the object from its parts.
+     *
+     * @param bucket     name of the bucket
+     * @param objectName name of the object
+     * @param uploadId   identifier of the upload
+     * @param partETags  entity tags of the parts, in order of part number starting from 1
+     * @throws IOException if the upload cannot be committed
+     */
+    void commitMultipartUpload(String bucket, String objectName, String uploadId, List<String> partETags) throws IOException;
+
+    /**
+     * Abort a multipart upload and discard the parts already uploaded.
+     *
+     * @param bucket     name of the bucket
+     * @param objectName name of the object
+     * @param uploadId   identifier of the upload
+     * @throws IOException if the upload cannot be aborted
+     */
+    void abortMultipartUpload(String bucket, String objectName, String uploadId) throws IOException;
+
+    /**
+     * Copy an object to another bucket. The copy runs in background and the
+     * returned future completes when the copy is finished.
+     *
+     * @param sourceBucket           name of the source bucket
+     * @param sourceObjectName       name of the source object
+     * @param destinationBucket      name of the destination bucket
+     * @param destinationObjectName  name of the destination object
+     * @param timeoutNanos           maximum time to wait for the copy, after which the future completes exceptionally
+     * @return a future that completes with true if the copy completed successfully,
+     *         or with false if the copy failed or it was canceled
+     */
+    CompletableFuture<Boolean> copyObject(String sourceBucket, String sourceObjectName, String destinationBucket, String destinationObjectName, long timeoutNanos);
+
+    /**
+     * Delete an object.
+     *
+     * @param bucket     name of the bucket
+     * @param objectName name of the object
+     * @throws IOException if the object cannot be deleted
+     */
+    void deleteObject(String bucket, String objectName) throws IOException;
+
+    /**
+     * Rename an object within its bucket, with a single synchronous request.
+     *
+     * @param bucket     name of the bucket
+     * @param objectName name of the object
+     * @param newName    new name of the object, an existing object with this name is replaced
+     * @param eTag       entity tag the object must have, may be null
+     * @throws IOException if the object cannot be renamed, or if it has changed
+     */
+    void renameObject(String bucket, String objectName, String newName, String eTag) throws IOException;
+
+    /**
+     * List the objects of a bucket in lexicographical order, one page at a time.
+     *
+     * @param bucket name of the bucket
+     * @param prefix only the objects whose name starts with this prefix are listed, may be null
+     * @param start  name of the first object of the page, as returned by the previous page, may be null
+     * @param limit  maximum number of objects of the page
+     * @return the page of objects
+     * @throws IOException if the objects cannot be listed
+     */
+    ObjectListing listObjects(String bucket, String prefix, String start, int limit) throws IOException;
+
+    /**
+     * Release the resources held by the service.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,259 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upload the output of an image writer while it is produced. The encoded bytes
+ * go into pooled chunks and are uploaded with their exact length, without
+ * being copied into a single array. When the output grows beyond a threshold
+ * the upload switches to a multipart upload: the parts already flushed by the
+ * writer are sent in parallel while the encoding goes on, and the number of
+ * parts in flight for each upload is bounded to keep the heap usage bounded.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class StreamingUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingUploader.class);
+
+    /**
+     * Write the content to be uploaded, typically by calling an ImageWriter.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(ImageOutputStream out) throws IOException;
+    }
+
+    private final StorageService storage;
+    private final ChunkPool pool;
+    private final ExecutorService partExecutor;
+    private final long multipartThreshold;
+    private final long partSize;
+    private final int maxPartsInFlight;
+
+    /**
+     * Create an uploader.
+     *
+     * @param storage            storage that receives the objects
+     * @param pool               pool of the chunks used to buffer the output
+     * @param partExecutor       executor that uploads the parts of the multipart uploads
+     * @param multipartThreshold size above which an object is uploaded in parts, in bytes
+     * @param partSize           size of each part, rounded up to a multiple of the chunk size
+     * @param maxPartsInFlight   maximum number of parts of the same object buffered or uploading at the same time
+     */
+    public StreamingUploader(StorageService storage, ChunkPool pool, ExecutorService partExecutor, long multipartThreshold, long partSize, int maxPartsInFlight) {
+
+        this.storage = storage;
+        this.pool = pool;
+        this.partExecutor = partExecutor;
+        this.multipartThreshold = multipartThreshold;
+        // The parts are made of whole chunks, so they can be detached from the stream without copies
+        this.partSize = Math.max(1, (partSize + pool.getChunkSize() - 1) / pool.getChunkSize()) * pool.getChunkSize();
+        this.maxPartsInFlight = Math.max(1, maxPartsInFlight);
+
+    }
+
+    /**
+     * Write an object and upload it.
+     *
+     * @param bucket       name of the bucket
+     * @param objectName   name of the object
+     * @param contentType  MIME type of the content, may be null
+     * @param userMetadata user defined metadata, may be null
+     * @param writer       the producer of the content
+     * @return the size of the uploaded object in bytes
+     * @throws IOException if the content cannot be written or uploaded
+     */
+    public long upload(String bucket, String objectName, String contentType, Map<String, String> userMetadata, ContentWriter writer) throws IOException {
+
+        try (ChunkedImageOutputStream out = new ChunkedImageOutputStream(pool)) {
+            Upload upload = new Upload(out, bucket, objectName, contentType, userMetadata);
+            out.setFlushListener(upload);
+            try {
+                writer.writeTo(out);
+                out.flush();
+                return upload.finish();
+            } catch (IOException | RuntimeException e) {
+                upload.abort();
+                throw e;
+            }
+        }
+
+    }
+
+    /**
+     * State of the upload of a single object.
+     */
+    private final class Upload implements ChunkedImageOutputStream.FlushListener {
+
+        private final ChunkedImageOutputStream out;
+        private final String bucket;
+        private final String objectName;
+        private final String contentType;
+        private final Map<String, String> userMetadata;
+        private final Semaphore partsInFlight = new Semaphore(maxPartsInFlight);
+        private final List<CompletableFuture<String>> parts = new ArrayList<>();
+        private String uploadId;
+        private long nextPartStart;
+
+        Upload(ChunkedImageOutputStream out, String bucket, String objectName, String contentType, Map<String, String> userMetadata) {
+            this.out = out;
+            this.bucket = bucket;
+            this.objectName = objectName;
+            this.contentType = contentType;
+            this.userMetadata = userMetadata;
+        }
+
+        @Override
+        public void flushed(long flushedPosition) throws IOException {
+
+            // Small objects are uploaded with a single request when the writer has finished
+            if (uploadId == null && flushedPosition < multipartThreshold) {
+                return;
+            }
+            while (flushedPosition - nextPartStart >= partSize) {
+                uploadPart(nextPartStart + partSize);
+            }
+
+        }
+
+        long finish() throws IOException {
+
+            long length = out.length();
+
+            if (uploadId == null && length <= multipartThreshold) {
+                ChunkedImageOutputStream.ChunkRange content = out.detach(0, length);
+                try (InputStream in = content.newInputStream()) {
+                    storage.putObject(bucket, objectName, in, length, contentType, userMetadata);
+                } finally {
+                    content.release();
+                }
+                return length;
+            }
+
+            while (nextPartStart < length) {
+                uploadPart(Math.min(length, nextPartStart + partSize));
+            }
+            List<String> partETags = new ArrayList<>();
+            for (CompletableFuture<String> part : parts) {
+                partETags.add(join(part));
+            }
+            storage.commitMultipartUpload(bucket, objectName, uploadId, partETags);
+            logger.info("Uploaded {} in {} parts, {} bytes", objectName, partETags.size(), length);
+            return length;
+
+        }
+
+        void abort() {
+
+            if (uploadId == null) {
+                return;
+            }
+            // Let the parts in flight settle before aborting, so that no part is left behind
+            for (CompletableFuture<String> part : parts) {
+                try {
+                    join(part);
+                } catch (IOException e) {
+                    // Already reported by the failure that caused the abort
+                }
+            }
+            try {
+                storage.abortMultipartUpload(bucket, objectName, uploadId);
+            } catch (Exception e) {
+                logger.error("Error aborting multipart upload of {}: {}", objectName, e.getMessage());
+            }
+
+        }
+
+        private void uploadPart(long end) throws IOException {
+
+            if (uploadId == null) {
+                uploadId = storage.createMultipartUpload(bucket, objectName, contentType, userMetadata);
+            }
+
+            // Wait for a free slot, the writer is slowed down when the network cannot keep up
+            try {
+                partsInFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted uploading " + objectName);
+            }
+
+            int partNumber = parts.size() + 1;
+            ChunkedImageOutputStream.ChunkRange content = out.detach(nextPartStart, end);
+            nextPartStart = end;
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                try (InputStream in = content.newInputStream()) {
+                    return storage.uploadPart(bucket, objectName, uploadId, partNumber, in, content.length());
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    content.release();
+                    partsInFlight.release();
+                }
+            }, partExecutor));
+
+        }
+
+        private String join(CompletableFuture<String> part) throws IOException {
+
+            try {
+                return part.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted uploading " + objectName);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Error uploading part of " + objectName, cause);
+            }
+
+        }
+
+    }
+
+}
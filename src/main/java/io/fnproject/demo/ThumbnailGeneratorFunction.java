@@ -26,34 +26,47 @@
 
 package io.fnproject.demo;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import com.fnproject.fn.api.FnConfiguration;
 import com.fnproject.fn.api.RuntimeContext;
 
+import com.oracle.bmc.auth.BasicAuthenticationDetailsProvider;
+import com.oracle.bmc.auth.ConfigFileAuthenticationDetailsProvider;
 import com.oracle.bmc.auth.ResourcePrincipalAuthenticationDetailsProvider;
-import com.oracle.bmc.objectstorage.ObjectStorage;
-import com.oracle.bmc.objectstorage.ObjectStorageClient;
-import com.oracle.bmc.objectstorage.model.CopyObjectDetails;
-import com.oracle.bmc.objectstorage.model.WorkRequest;
-import com.oracle.bmc.objectstorage.requests.CopyObjectRequest;
-import com.oracle.bmc.objectstorage.requests.DeleteObjectRequest;
-import com.oracle.bmc.objectstorage.requests.GetObjectRequest;
-import com.oracle.bmc.objectstorage.requests.PutObjectRequest;
-import com.oracle.bmc.objectstorage.requests.GetWorkRequestRequest;
-import com.oracle.bmc.objectstorage.responses.CopyObjectResponse;
-import com.oracle.bmc.objectstorage.responses.DeleteObjectResponse;
-import com.oracle.bmc.objectstorage.responses.GetObjectResponse;
-import com.oracle.bmc.objectstorage.responses.PutObjectResponse;
-import com.oracle.bmc.objectstorage.responses.GetWorkRequestResponse;
 
 import java.awt.image.BufferedImage;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GradientPaint;
 import java.awt.Graphics2D;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,11 +74,16 @@ import org.slf4j.LoggerFactory;
 /**
  * Main class that implements the thumbnail generation function.
  *
- * @version 1.6 12 Apr 2023
+ * @version 1.34 17 Oct 2026
  * @author PaoloB
  */
 public class ThumbnailGeneratorFunction {
 
+    static {
+        // The function never opens a display, Java2D must be initialized without looking for one
+        System.setProperty("java.awt.headless", "true");
+    }
+
     // Variables to save the environment variables of the function
     private Boolean debug;        // DEBUG - Enables debugging informations in log files
     private String region;        // OCI_REGION - OCI region
@@ -75,6 +93,46 @@ public class ThumbnailGeneratorFunction {
     private String namePrefix;    // NAME_PREFIX - Prefix for the name of the generated thumbnail
     private double scalingFactor; // SCALING_FACTOR - Factor to scale the image, it should be < 1 to scale down
     private String imageFormat;   // IMAGE_FORMAT - Format of the generated thumbnail
+    private String storageBackend; // STORAGE_BACKEND - Storage used to read and write the images: oci or memory
+    private String ociAuthentication; // OCI_AUTH - Authentication to Object Storage: resource_principal or config_file
+    private String ociEndpoint;   // OCI_ENDPOINT - Endpoint of Object Storage, instead of the one of the region
+    private long memoryBudget;    // MEMORY_BUDGET_MB - Maximum heap used by the images decoded at the same time, in megabytes
+    private List<Rendition> renditions; // RENDITIONS - Scaled versions generated from each image
+    private int renditionThreads; // RENDITION_THREADS - Number of renditions encoded and uploaded in parallel
+    private String resamplingFilter; // RESAMPLING_FILTER - Algorithm used to scale the images
+    private int scaleThreads; // SCALE_THREADS - Number of threads that help the rendition threads to scale the images
+    private int batchConcurrency; // BATCH_CONCURRENCY - Number of objects of a batch processed at the same time
+    private long batchTimeBudget; // BATCH_TIME_BUDGET_SECONDS - Time after which a batch stops starting new objects
+    private long functionTimeout; // FUNCTION_TIMEOUT_SECONDS - Timeout of the function, the same of func.yaml
+    private int batchPageSize;    // BATCH_PAGE_SIZE - Number of objects listed at a time by a backfill
+    private int uploadChunkSize;  // UPLOAD_CHUNK_KB - Size of the pooled buffers that hold the encoded images
+    private int uploadPoolSize;   // UPLOAD_POOL_MB - Memory retained by the pool of idle buffers
+    private long multipartThreshold; // MULTIPART_THRESHOLD_MB - Size above which the renditions are uploaded in parts
+    private long multipartPartSize;  // MULTIPART_PART_SIZE_MB - Size of each part of a multipart upload
+    private int uploadParallelism; // UPLOAD_PARALLELISM - Number of parts of a rendition uploaded at the same time
+    private boolean skipUnchanged; // SKIP_UNCHANGED - Skips the images whose renditions are already up to date
+    private int idempotencyCacheSize; // IDEMPOTENCY_CACHE_SIZE - Number of recently processed images remembered by the container
+    private boolean metricsInResponse; // METRICS_IN_RESPONSE - Adds the metrics of the invocation to the response
+    private long metricsWindow;   // METRICS_WINDOW_SECONDS - Window of the rolling percentiles of the container
+    private float jpegQuality;    // JPEG_QUALITY - Quality of the JPEG thumbnails, from 0 to 1
+    private boolean jpegProgressive; // JPEG_PROGRESSIVE - Generates progressive JPEG thumbnails
+    private boolean jpegOptimizeHuffman; // JPEG_OPTIMIZE_HUFFMAN - Optimizes the Huffman tables of each JPEG thumbnail
+    private String jpegChromaSubsampling; // JPEG_CHROMA_SUBSAMPLING - Chroma subsampling of the JPEG thumbnails: 420, 422 or 444
+    private int pngCompressionLevel; // PNG_COMPRESSION_LEVEL - Deflate level of the PNG thumbnails, from 0 to 9
+    private String tiffCompression; // TIFF_COMPRESSION - Compression of the TIFF thumbnails
+    private double autoFormatMinPsnr; // AUTO_FORMAT_MIN_PSNR - Minimum PSNR of a JPEG thumbnail selected by the auto format, in dB
+    private boolean warmUp;       // WARM_UP - Initializes the libraries used by the invocations when the container starts
+    private Pattern objectNamePattern; // OBJECT_NAME_PATTERN - Regular expression of the names of the images to be processed
+    private long maxSourceBytes;  // MAX_SOURCE_MB - Maximum size of an original image, in megabytes
+    private long maxSourcePixels; // MAX_SOURCE_MEGAPIXELS - Maximum size of an original image, in megapixels
+    private String rejectBucket;  // REJECT_BUCKET - Bucket where the rejected objects of BUCKET_IN are moved
+    private long downloadThreshold; // DOWNLOAD_THRESHOLD_MB - Size from which the originals are downloaded in parallel ranges
+    private int downloadChunkSize; // DOWNLOAD_CHUNK_MB - Size of each range of a parallel download
+    private int downloadParallelism; // DOWNLOAD_PARALLELISM - Number of ranges downloaded at the same time
+    private long downloadMaxSize; // DOWNLOAD_MAX_MB - Maximum size of an original downloaded into the heap, the larger ones are streamed
+    private ArchiveStrategy archiveStrategy; // ARCHIVE_STRATEGY - How the originals are archived: copy, reupload, rename, skip or auto
+    private String archivePrefix; // ARCHIVE_PREFIX - Prefix added to the name of the archived originals
+    private long archiveReuploadMaxSize; // ARCHIVE_REUPLOAD_MAX_MB - Maximum size of an original archived by re-upload in auto mode
 
     // Variables to save the internal environment variables
     private String ociResourcePrincipalVersion; // OCI_RESOURCE_PRINCIPAL_VERSION
@@ -82,8 +140,66 @@ public class ThumbnailGeneratorFunction {
     private String ociResourcePrincipalRPST;    // OCI_RESOURCE_PRINCIPAL_RPST
     private String ociResourcePrincipalPEM;     // OCI_RESOURCE_PRINCIPAL_PRIVATE_PEM
 
-    // Authentication using Resource Principal
-    final ResourcePrincipalAuthenticationDetailsProvider provider = ResourcePrincipalAuthenticationDetailsProvider.builder().build();
+    // Storage shared by all the invocations served by this container
+    private StorageService storage;
+
+    // Memory shared by the images decoded at the same time, by a single event or by a batch
+    private MemoryBudget imageMemory;
+
+    // Decoder that keeps the heap usage bounded by the size of the thumbnail
+    private DecodePlanner decodePlanner;
+
+    // Resampler used to scale the decoded image to the size of the renditions
+    private Resampler resampler;
+
+    // Executor used to encode and upload the renditions in parallel
+    private ExecutorService renditionExecutor;
+
+    // Executor used to upload the originals archived by REUPLOAD, one for each image processed at the same time
+    private ExecutorService archiveExecutor;
+
+    // Processor of the batches of events and of the backfill commands
+    private BatchProcessor batchProcessor;
+
+    // Checks of the events and of the objects before their download
+    private PreflightFilter preflight;
+
+    // Downloader of the large originals in parallel ranges
+    private ParallelDownloader downloader;
+
+    // Encoders of the renditions, with the compression settings of each format
+    private EncoderPool encoderPool;
+
+    // Uploader that streams the encoded renditions to bucketOut through pooled buffers
+    private StreamingUploader uploader;
+
+    // Selector of the format of the renditions in the auto format
+    private FormatSelector formatSelector;
+
+    // Index of the work already done, to skip duplicate events and unchanged images
+    private IdempotencyIndex idempotencyIndex;
+
+    // Rolling percentiles of the invocations served by this container, and metrics of the current invocation.
+    // A container serves an invocation at a time, the objects of a batch share the metrics of their invocation
+    private InvocationMetrics.Histograms histograms;
+    private volatile InvocationMetrics metrics;
+
+    // Time by which the current invocation must answer, the copies of its originals are not waited for longer
+    private volatile long invocationDeadline;
+
+    // Time left at the end of an invocation to archive the originals and to answer before the timeout of the function
+    private static final long RESPONSE_MARGIN_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // Logger of the structured metrics, a JSON document on a single line for each invocation
+    private static final Logger metricsLogger = LoggerFactory.getLogger("metrics");
+
+    // Mapper of the payloads and of the responses, it is thread safe and it caches the introspection of the classes
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    // Event and object used by the warm-up, the object is never created
+    private static final String WARMUP_EVENT = "{\"eventType\":\"com.oraclecloud.objectstorage.createobject\","
+                                               + "\"data\":{\"resourceName\":\"warm-up.jpg\",\"additionalDetails\":{\"bucketName\":\"warm-up\"}}}";
+    private static final String WARMUP_OBJECT = ".thumbgenfn-warm-up";
 
     // Supported image formats
     static final String[] imageFormats = { "bmp", "gif", "jpeg", "jpg", "png", "tif", "tiff", "wbmp" };
@@ -111,44 +227,861 @@ public class ThumbnailGeneratorFunction {
         namePrefix = ctx.getConfigurationByKey("NAME_PREFIX").orElse("scaled-");
         // The default scalingFactor is 0.5 (50% of the original size)
         scalingFactor = Double.parseDouble(ctx.getConfigurationByKey("SCALING_FACTOR").orElse("0.5"));
-        // imageFormat is one the following: BMP, GIF, JPEG, JPG, PNG, TIF, TIFF, WBMP, bmp, gif, jpeg, jpg, png, tif, tiff, wbmp.
-        // The default value is jpg
+        // imageFormat is one the following: BMP, GIF, JPEG, JPG, PNG, TIF, TIFF, WBMP, bmp, gif, jpeg, jpg, png, tif, tiff, wbmp,
+        // or auto to choose between JPEG and PNG image by image. The default value is jpg
         imageFormat = ctx.getConfigurationByKey("IMAGE_FORMAT").orElse("jpg");
         imageFormat = imageFormat.toLowerCase();
+        // storageBackend is oci or memory, the latter is used to run the function offline
+        // The default value is oci
+        storageBackend = ctx.getConfigurationByKey("STORAGE_BACKEND").orElse("oci").toLowerCase();
+        // ociAuthentication is resource_principal or config_file, the latter is used to run the function out of OCI Functions
+        // The default value is resource_principal
+        ociAuthentication = ctx.getConfigurationByKey("OCI_AUTH").orElse("resource_principal").toLowerCase();
+        // By default the endpoint is the one of the region of the authentication
+        ociEndpoint = ctx.getConfigurationByKey("OCI_ENDPOINT").orElse(null);
+        // The default memoryBudget is 64 MB, a quarter of the memory of the function, shared by all the images
+        // decoded at the same time: a single image may use half of it
+        memoryBudget = Long.parseLong(ctx.getConfigurationByKey("MEMORY_BUDGET_MB").orElse("64")) * 1024 * 1024;
+        // renditions is a comma separated list of size[:prefix[:format]], for example 64w,256w,0.5:large-:png
+        // The default is a single rendition made of SCALING_FACTOR, NAME_PREFIX and IMAGE_FORMAT
+        String renditionList = ctx.getConfigurationByKey("RENDITIONS").orElse("");
+        renditions = renditionList.isBlank() ? List.of(Rendition.ofScalingFactor(scalingFactor, namePrefix, imageFormat))
+                                             : Rendition.parseList(renditionList, imageFormat);
+        // The default renditionThreads is 4
+        renditionThreads = Integer.parseInt(ctx.getConfigurationByKey("RENDITION_THREADS").orElse("4"));
+        // resamplingFilter is one of the following: box, bilinear, mitchell, lanczos, java2d.
+        // The default value is box, an area average that does not alias when scaling down
+        resamplingFilter = ctx.getConfigurationByKey("RESAMPLING_FILTER").orElse("box").toLowerCase();
+        // The default scaleThreads is 2
+        scaleThreads = Integer.parseInt(ctx.getConfigurationByKey("SCALE_THREADS").orElse("2"));
+        // The default batchConcurrency is 4
+        batchConcurrency = Integer.parseInt(ctx.getConfigurationByKey("BATCH_CONCURRENCY").orElse("4"));
+        // The default batchTimeBudget is 90 seconds, to leave time to finish the objects in progress before the timeout of the function
+        batchTimeBudget = Long.parseLong(ctx.getConfigurationByKey("BATCH_TIME_BUDGET_SECONDS").orElse("90"));
+        // The default functionTimeout is 120 seconds, the timeout of func.yaml
+        functionTimeout = Long.parseLong(ctx.getConfigurationByKey("FUNCTION_TIMEOUT_SECONDS").orElse("120"));
+        // The default batchPageSize is 100
+        batchPageSize = Integer.parseInt(ctx.getConfigurationByKey("BATCH_PAGE_SIZE").orElse("100"));
+        // The default uploadChunkSize is 256 KB
+        uploadChunkSize = Integer.parseInt(ctx.getConfigurationByKey("UPLOAD_CHUNK_KB").orElse("256")) * 1024;
+        // The default uploadPoolSize is 16 MB
+        uploadPoolSize = Integer.parseInt(ctx.getConfigurationByKey("UPLOAD_POOL_MB").orElse("16")) * 1024 * 1024;
+        // The default multipartThreshold is 32 MB
+        multipartThreshold = Long.parseLong(ctx.getConfigurationByKey("MULTIPART_THRESHOLD_MB").orElse("32")) * 1024 * 1024;
+        // The default multipartPartSize is 10 MB, the minimum size of a part accepted by Object Storage
+        multipartPartSize = Long.parseLong(ctx.getConfigurationByKey("MULTIPART_PART_SIZE_MB").orElse("10")) * 1024 * 1024;
+        // The default uploadParallelism is 3
+        uploadParallelism = Integer.parseInt(ctx.getConfigurationByKey("UPLOAD_PARALLELISM").orElse("3"));
+        // If true, the renditions stamped with the hash of the current source and parameters are not generated again
+        skipUnchanged = Boolean.parseBoolean(ctx.getConfigurationByKey("SKIP_UNCHANGED").orElse("true"));
+        // The default idempotencyCacheSize is 1000, 0 disables the cache
+        idempotencyCacheSize = Integer.parseInt(ctx.getConfigurationByKey("IDEMPOTENCY_CACHE_SIZE").orElse("1000"));
+        // If true, the metrics logged at the end of each invocation are also part of the response
+        metricsInResponse = Boolean.parseBoolean(ctx.getConfigurationByKey("METRICS_IN_RESPONSE").orElse("false"));
+        // The default metricsWindow is 300 seconds, the percentiles cover the last 5 to 10 minutes
+        metricsWindow = Long.parseLong(ctx.getConfigurationByKey("METRICS_WINDOW_SECONDS").orElse("300"));
+        // The default jpegQuality is 0.75, the same of ImageIO
+        jpegQuality = Float.parseFloat(ctx.getConfigurationByKey("JPEG_QUALITY").orElse("0.75"));
+        // The default jpegProgressive is false
+        jpegProgressive = Boolean.parseBoolean(ctx.getConfigurationByKey("JPEG_PROGRESSIVE").orElse("false"));
+        // The default jpegOptimizeHuffman is false, optimized tables give smaller files at the cost of a second pass
+        jpegOptimizeHuffman = Boolean.parseBoolean(ctx.getConfigurationByKey("JPEG_OPTIMIZE_HUFFMAN").orElse("false"));
+        // The default jpegChromaSubsampling is 420, the same of ImageIO
+        jpegChromaSubsampling = ctx.getConfigurationByKey("JPEG_CHROMA_SUBSAMPLING").orElse("420");
+        // The default pngCompressionLevel is 4, the same of ImageIO
+        pngCompressionLevel = Integer.parseInt(ctx.getConfigurationByKey("PNG_COMPRESSION_LEVEL").orElse("4"));
+        // tiffCompression is none or one of the types of the TIFF writer, for example LZW, Deflate or PackBits.
+        // The default value is none
+        tiffCompression = ctx.getConfigurationByKey("TIFF_COMPRESSION").orElse("none");
+        // The default autoFormatMinPsnr is 28 dB, the JPEG thumbnails of photos at the default quality are around 30 dB
+        autoFormatMinPsnr = Double.parseDouble(ctx.getConfigurationByKey("AUTO_FORMAT_MIN_PSNR").orElse("28"));
+        // The default warmUp is true
+        warmUp = Boolean.parseBoolean(ctx.getConfigurationByKey("WARM_UP").orElse("true"));
+        // By default all the names are processed
+        String namePattern = ctx.getConfigurationByKey("OBJECT_NAME_PATTERN").orElse("");
+        objectNamePattern = namePattern.isEmpty() ? null : Pattern.compile(namePattern);
+        // The default maxSourceBytes is 0, no limit
+        maxSourceBytes = (long) (Double.parseDouble(ctx.getConfigurationByKey("MAX_SOURCE_MB").orElse("0")) * 1024 * 1024);
+        // The default maxSourcePixels is 0, no limit
+        maxSourcePixels = (long) (Double.parseDouble(ctx.getConfigurationByKey("MAX_SOURCE_MEGAPIXELS").orElse("0")) * 1000000);
+        // By default the rejected objects are left in BUCKET_IN
+        rejectBucket = ctx.getConfigurationByKey("REJECT_BUCKET").orElse("");
+        // The default downloadThreshold is 8 MB
+        downloadThreshold = Long.parseLong(ctx.getConfigurationByKey("DOWNLOAD_THRESHOLD_MB").orElse("8")) * 1024 * 1024;
+        // The default downloadChunkSize is 4 MB
+        downloadChunkSize = Integer.parseInt(ctx.getConfigurationByKey("DOWNLOAD_CHUNK_MB").orElse("4")) * 1024 * 1024;
+        // The default downloadParallelism is 4
+        downloadParallelism = Integer.parseInt(ctx.getConfigurationByKey("DOWNLOAD_PARALLELISM").orElse("4"));
+        // The default downloadMaxSize is 32 MB, the whole original is held in the heap while it is decoded and it takes
+        // its bytes from MEMORY_BUDGET_MB, whose downloaded originals may use at most half
+        downloadMaxSize = Long.parseLong(ctx.getConfigurationByKey("DOWNLOAD_MAX_MB").orElse("32")) * 1024 * 1024;
+        // archiveStrategy is one of the following: copy, reupload, rename, skip, auto.
+        // The default value is auto
+        archiveStrategy = ArchiveStrategy.forName(ctx.getConfigurationByKey("ARCHIVE_STRATEGY").orElse("auto"));
+        // By default the archived originals keep their name
+        archivePrefix = ctx.getConfigurationByKey("ARCHIVE_PREFIX").orElse("");
+        // The default archiveReuploadMaxSize is 5 MB
+        archiveReuploadMaxSize = Long.parseLong(ctx.getConfigurationByKey("ARCHIVE_REUPLOAD_MAX_MB").orElse("5")) * 1024 * 1024;
+        validateArchiveStrategy();
 
         // OCI_RESOURCE_PRINCIPAL_VERSION
-        ociResourcePrincipalVersion = ctx.getConfigurationByKey("OCI_RESOURCE_PRINCIPAL_VERSION").orElseThrow(() -> new RuntimeException("Missing configuration: OCI_RESOURCE_PRINCIPAL_VERSION"));
+        ociResourcePrincipalVersion = requiredForOci(ctx, "OCI_RESOURCE_PRINCIPAL_VERSION");
         // OCI_RESOURCE_PRINCIPAL_REGION
-        ociResourcePrincipalRegion = ctx.getConfigurationByKey("OCI_RESOURCE_PRINCIPAL_REGION").orElseThrow(() -> new RuntimeException("Missing configuration: OCI_RESOURCE_PRINCIPAL_REGION"));
+        ociResourcePrincipalRegion = requiredForOci(ctx, "OCI_RESOURCE_PRINCIPAL_REGION");
         // OCI_RESOURCE_PRINCIPAL_RPST
-        ociResourcePrincipalRPST = ctx.getConfigurationByKey("OCI_RESOURCE_PRINCIPAL_RPST").orElseThrow(() -> new RuntimeException("Missing configuration: OCI_RESOURCE_PRINCIPAL_RPST"));
+        ociResourcePrincipalRPST = requiredForOci(ctx, "OCI_RESOURCE_PRINCIPAL_RPST");
         // OCI_RESOURCE_PRINCIPAL_PRIVATE_PEM
-        ociResourcePrincipalPEM = ctx.getConfigurationByKey("OCI_RESOURCE_PRINCIPAL_PRIVATE_PEM").orElseThrow(() -> new RuntimeException("Missing configuration: OCI_RESOURCE_PRINCIPAL_PRIVATE_PEM"));
+        ociResourcePrincipalPEM = requiredForOci(ctx, "OCI_RESOURCE_PRINCIPAL_PRIVATE_PEM");
+
+        // Create the storage once, it is reused by all the invocations served by this container
+        storage = createStorage(ctx);
+        preflight = new PreflightFilter(storage, bucketIn, objectName -> acceptsName(bucketIn, objectName), maxSourceBytes, maxSourcePixels);
+        downloader = new ParallelDownloader(storage, Executors.newFixedThreadPool(downloadParallelism, daemonThreadFactory("download")),
+                                            downloadThreshold, downloadMaxSize, downloadChunkSize);
+        // A decode waits for the memory of the other images at most until the deadline of the invocation
+        imageMemory = new MemoryBudget(memoryBudget);
+        decodePlanner = new DecodePlanner(imageMemory, this::remainingNanos);
+        // The bands of rows of an image are scaled by the rendition thread and by the threads of the function,
+        // never by the common pool, that is shared by the whole JVM and sized on the host
+        resampler = Resampler.forName(resamplingFilter, Executors.newFixedThreadPool(scaleThreads, daemonThreadFactory("scale")), scaleThreads);
+        encoderPool = new EncoderPool(jpegQuality, jpegProgressive, jpegOptimizeHuffman, jpegChromaSubsampling,
+                                      pngCompressionLevel, tiffCompression, renditionThreads);
+        prepareEncoders();
+        renditionExecutor = Executors.newFixedThreadPool(renditionThreads, daemonThreadFactory("rendition"));
+        archiveExecutor = Executors.newFixedThreadPool(batchConcurrency, daemonThreadFactory("archive"));
+        batchProcessor = new BatchProcessor(storage, Executors.newFixedThreadPool(batchConcurrency, daemonThreadFactory("batch")),
+                                            this::processObject, TimeUnit.SECONDS.toNanos(batchTimeBudget), batchPageSize);
+        ChunkPool chunkPool = new ChunkPool(uploadChunkSize, Math.max(1, uploadPoolSize / uploadChunkSize));
+        uploader = new StreamingUploader(storage, chunkPool, Executors.newFixedThreadPool(uploadParallelism, daemonThreadFactory("upload")),
+                                         multipartThreshold, multipartPartSize, uploadParallelism);
+        // The JPEG candidates of the auto format are encoded on their own threads, one for each rendition encoded at the same time
+        formatSelector = new FormatSelector(encoderPool, chunkPool, Executors.newFixedThreadPool(renditionThreads, daemonThreadFactory("format")),
+                                            autoFormatMinPsnr);
+        idempotencyIndex = new IdempotencyIndex(idempotencyCacheSize);
+        histograms = new InvocationMetrics.Histograms(TimeUnit.SECONDS.toNanos(metricsWindow));
+        metrics = new InvocationMetrics(histograms);
+
+        if (warmUp) {
+            warmUp();
+        }
+
+    }
+
+    /**
+     * Initialize the libraries used by the invocations, so that the first invocation served by the container
+     * does not pay for them: the introspection of the payloads by Jackson, the plugins of ImageIO, Java2D,
+     * the encoders of the renditions and the storage client with its first connection.
+     * A failure of the warm-up is logged and left to the invocations.
+     */
+    private void warmUp() {
+
+        Logger logger = LoggerFactory.getLogger(ThumbnailGeneratorFunction.class);
+        long start = System.nanoTime();
+
+        try {
+            ObjectStorageCloudEvent event = mapper.readValue(WARMUP_EVENT, ObjectStorageCloudEvent.class);
+            BatchResponse response = new BatchResponse();
+            response.add(ProcessingResult.skipped(event.getData().get("resourceName").toString(), "Warm-up"));
+            mapper.writeValueAsString(response);
+
+            // The layout of the decoded JPEG images
+            BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setPaint(new GradientPaint(0, 0, Color.RED, 64, 48, Color.BLUE));
+            graphics.fillRect(0, 0, 64, 48);
+            graphics.dispose();
+
+            // Round trip of a small image in the formats of the renditions, and in JPEG that is the most common original
+            Set<String> formats = new LinkedHashSet<>();
+            formats.add("jpg");
+            formats.addAll(encodedFormats());
+            BufferedImage thumbnail = resampler.resize(image, 32, 24);
+            for (String format : formats) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+                    encoderPool.write(thumbnail, format, out);
+                } catch (IOException e) {
+                    logger.warn("Warm-up of format {} failed: {}", format, e.getMessage());
+                    continue;
+                }
+                try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                    decodePlanner.decode(in, size -> new Dimension(16, 12)).release();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Warm-up of the image libraries failed: {}", e.getMessage());
+        }
+
+        try {
+            // The object does not exist, the request only opens the connection and loads the client
+            storage.headObject(bucketIn, WARMUP_OBJECT);
+        } catch (Exception e) {
+            logger.warn("Warm-up of the storage failed: {}", e.getMessage());
+        }
+
+        logger.info("Warm-up completed in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    }
+
+    /**
+     * Check that the archive strategy can be applied to bucketIn and bucketOut.
+     */
+    private void validateArchiveStrategy() {
+
+        boolean sameBucket = bucketIn.equals(bucketOut);
+        if (archiveStrategy == ArchiveStrategy.RENAME && (!sameBucket || archivePrefix.isEmpty())) {
+            throw new RuntimeException("The archive strategy rename requires BUCKET_OUT equal to BUCKET_IN and an ARCHIVE_PREFIX");
+        }
+        // Copying an original onto itself and deleting it would lose it
+        if (sameBucket && archivePrefix.isEmpty() && archiveStrategy != ArchiveStrategy.SKIP) {
+            LoggerFactory.getLogger(ThumbnailGeneratorFunction.class).warn("BUCKET_IN and BUCKET_OUT are the same bucket and ARCHIVE_PREFIX is not defined, the originals are not archived");
+            archiveStrategy = ArchiveStrategy.SKIP;
+        }
+
+    }
+
+    /**
+     * Resolve the encoders of the formats of the renditions. The unsupported formats are reported by the invocations.
+     */
+    private void prepareEncoders() {
+
+        for (String format : encodedFormats()) {
+            try {
+                encoderPool.prepare(format);
+            } catch (IOException e) {
+                LoggerFactory.getLogger(ThumbnailGeneratorFunction.class).error("Error preparing the encoder of format {}: {}", format, e.getMessage());
+            }
+        }
+
+    }
+
+    /**
+     * Get the supported formats written by the renditions, the auto format writes all its candidates.
+     */
+    private Set<String> encodedFormats() {
+
+        Set<String> formats = new LinkedHashSet<>();
+        for (Rendition rendition : renditions) {
+            if (FormatSelector.AUTO.equals(rendition.getFormat())) {
+                formats.addAll(FormatSelector.candidates());
+            } else if (Arrays.asList(imageFormats).contains(rendition.getFormat())) {
+                formats.add(rendition.getFormat());
+            }
+        }
+        return formats;
+
+    }
+
+    /**
+     * Get a configuration value that is mandatory only when the storage is OCI Object Storage accessed with the resource principal.
+     *
+     * @param ctx the runtime context of the function
+     * @param key the name of the configuration value
+     * @return the configuration value, or an empty string if not needed
+     */
+    private String requiredForOci(RuntimeContext ctx, String key) {
+
+        if ("memory".equals(storageBackend) || "config_file".equals(ociAuthentication)) {
+            return ctx.getConfigurationByKey(key).orElse("");
+        }
+        return ctx.getConfigurationByKey(key).orElseThrow(() -> new RuntimeException("Missing configuration: " + key));
+
+    }
+
+    /**
+     * Create the storage service selected by STORAGE_BACKEND.
+     *
+     * @param ctx the runtime context of the function
+     * @return the storage service to be used by the invocations
+     */
+    private StorageService createStorage(RuntimeContext ctx) {
+
+        if ("memory".equals(storageBackend)) {
+            return InMemoryStorageService.getDefault();
+        }
+
+        BasicAuthenticationDetailsProvider provider;
+        if ("config_file".equals(ociAuthentication)) {
+            // Authentication using a profile of an OCI configuration file, by default ~/.oci/config
+            String configFile = ctx.getConfigurationByKey("OCI_CONFIG_FILE").orElse("~/.oci/config");
+            String profile = ctx.getConfigurationByKey("OCI_CONFIG_PROFILE").orElse("DEFAULT");
+            try {
+                provider = new ConfigFileAuthenticationDetailsProvider(configFile, profile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read the OCI configuration file " + configFile, e);
+            }
+        } else {
+            // Authentication using Resource Principal
+            provider = ResourcePrincipalAuthenticationDetailsProvider.builder().build();
+        }
+        // The default size of the connection pool is 16
+        int maxConnections = Integer.parseInt(ctx.getConfigurationByKey("HTTP_MAX_CONNECTIONS").orElse("16"));
+        // The default keep-alive of idle connections is 60 seconds
+        int keepAliveSeconds = Integer.parseInt(ctx.getConfigurationByKey("HTTP_KEEP_ALIVE_SECONDS").orElse("60"));
+
+        return new OciStorageService(provider, ociEndpoint, region, nameSpace, maxConnections, keepAliveSeconds);
+
+    }
+
+    /**
+     * Create a factory of daemon threads, so the pools never keep the container alive.
+     *
+     * @param name prefix of the name of the threads
+     * @return the thread factory
+     */
+    static ThreadFactory daemonThreadFactory(String name) {
+
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+    }
+
+    /**
+     * Evaluate the size that the decoded image must have to generate all the renditions.
+     *
+     * @param source size of the original image
+     * @return the size of the largest rendition
+     */
+    private Dimension largestRenditionSize(Dimension source) {
+
+        Dimension largest = new Dimension(1, 1);
+        for (Rendition rendition : renditions) {
+            Dimension target = rendition.targetSize(source);
+            largest.width = Math.max(largest.width, target.width);
+            largest.height = Math.max(largest.height, target.height);
+        }
+        return largest;
+
+    }
+
+    /**
+     * Generate all the renditions from a single decoded image and put them to bucketOut. The renditions
+     * are scaled in cascade, from the largest to the smallest for the size of the image, while the encoding
+     * and the upload of each one run in parallel on the rendition executor.
+     *
+     * @param decodedImage    the decoded original image
+     * @param fileName        name of the original image
+     * @param renditionHashes hash stamped on each rendition, in the same order of the renditions
+     * @return a future that completes when all the renditions have been put to bucketOut
+     */
+    private CompletableFuture<Void> generateRenditions(DecodedImage decodedImage, String fileName, List<String> renditionHashes) {
+
+        Logger logger = LoggerFactory.getLogger(ThumbnailGeneratorFunction.class);
+
+        InvocationMetrics metrics = this.metrics;
+        Dimension source = new Dimension(decodedImage.getSourceWidth(), decodedImage.getSourceHeight());
+        List<CompletableFuture<Void>> uploads = new ArrayList<>();
+        BufferedImage previousImage = decodedImage.getImage();
+
+        // The order of the renditions with mixed widths and heights depends on the aspect ratio of the image
+        for (Rendition rendition : Rendition.sortedBySize(renditions, source)) {
+
+            Map<String, String> userMetadata = Map.of(IdempotencyIndex.SOURCE_HASH, renditionHashes.get(renditions.indexOf(rendition)));
+
+            // Scale from the previous rendition when it is large enough, otherwise from the decoded image.
+            // The thumbnail keeps the layout of the original, the encoder adapts it to the format
+            Dimension target = rendition.targetSize(source);
+            BufferedImage scaleSource = previousImage.getWidth() >= target.width && previousImage.getHeight() >= target.height ? previousImage : decodedImage.getImage();
+            long scaleStart = System.nanoTime();
+            BufferedImage outputImage = resampler.resize(scaleSource, target.width, target.height);
+            metrics.recordSince(InvocationMetrics.Stage.SCALE, scaleStart);
+            previousImage = outputImage;
+
+            uploads.add(CompletableFuture.runAsync(() -> {
+                try {
+                    // Generate the thumbnail and put it to bucketOut while it is encoded. In the auto format
+                    // the format is selected first, and the candidates already encoded are only copied
+                    long uploadStart = System.nanoTime();
+                    long[] encodeNanos = new long[1];
+                    FormatSelector.Selection selection = FormatSelector.AUTO.equals(rendition.getFormat()) ? formatSelector.select(outputImage) : null;
+                    long length;
+                    try {
+                        String contentType = selection == null ? rendition.getContentType() : selection.getContentType();
+                        length = uploader.upload(bucketOut, rendition.getPrefix() + fileName, contentType, userMetadata, out -> {
+                            if (selection == null) {
+                                encoderPool.write(outputImage, rendition.getFormat(), out);
+                            } else {
+                                selection.writeTo(out);
+                            }
+                            encodeNanos[0] = System.nanoTime() - uploadStart;
+                        });
+                    } finally {
+                        if (selection != null) {
+                            selection.release();
+                        }
+                    }
+                    metrics.record(InvocationMetrics.Stage.ENCODE, encodeNanos[0]);
+                    metrics.record(InvocationMetrics.Stage.PUT, System.nanoTime() - uploadStart - encodeNanos[0]);
+                    metrics.addBytesOut(length);
+                    metrics.addPixelsEncoded((long) outputImage.getWidth() * outputImage.getHeight());
+                    logger.info("Created thumbnail file: {}{} ({})", rendition.getPrefix(), fileName, selection == null ? rendition.getFormat() : selection.getFormat());
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, renditionExecutor));
+
+        }
+
+        return CompletableFuture.allOf(uploads.toArray(new CompletableFuture<?>[0]));
+
+    }
+
+    /**
+     * Wait for a future and rethrow the original cause of its failure.
+     *
+     * @param future the future to wait for
+     * @param <T>    the type of the result
+     * @return the result of the future
+     * @throws Exception the cause of the failure of the future
+     */
+    static <T> T await(CompletableFuture<T> future) throws Exception {
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+
+    }
+
+    /**
+     * Describe all the parameters that affect the content of a rendition, so that a change of any
+     * of them makes the renditions already generated out of date.
+     *
+     * @param rendition the rendition
+     * @return the parameters of the rendition
+     */
+    private String renderingParameters(Rendition rendition) {
+        String settings = FormatSelector.AUTO.equals(rendition.getFormat()) ? formatSelector.describe() : encoderPool.describe(rendition.getFormat());
+        return rendition.getSize() + ":" + rendition.getFormat() + ":" + resamplingFilter + ":" + settings;
+    }
+
+    /**
+     * Check if all the renditions of an image are stamped with the expected hash.
+     *
+     * @param fileName        name of the original image
+     * @param renditionHashes expected hash of each rendition, in the same order of the renditions
+     * @return true if all the renditions are up to date
+     * @throws IOException if the metadata of the renditions cannot be read
+     */
+    private boolean renditionsCurrent(String fileName, List<String> renditionHashes) throws IOException {
+
+        for (int i = 0; i < renditions.size(); i++) {
+            long headStart = System.nanoTime();
+            ObjectMetadata rendition = storage.headObject(bucketOut, renditions.get(i).getPrefix() + fileName);
+            metrics.recordSince(InvocationMetrics.Stage.HEAD, headStart);
+            if (!IdempotencyIndex.isCurrent(rendition, renditionHashes.get(i))) {
+                return false;
+            }
+        }
+        return true;
+
+    }
+
+    /**
+     * Check if an object is an original image and not one of the generated renditions.
+     *
+     * @param objectName name of the object
+     * @return true if the name of the object does not start with the prefix of any rendition
+     */
+    private boolean isOriginal(String objectName) {
+
+        for (Rendition rendition : renditions) {
+            if (!rendition.getPrefix().isEmpty() && objectName.startsWith(rendition.getPrefix())) {
+                return false;
+            }
+        }
+        return true;
 
     }
 
     /**
-     * Scale the image with standard javax ImageIO.
+     * Check if an object must be processed: it is an original image not yet archived and its name matches objectNamePattern.
      *
-     * @param originalImage image to be converted
-     * @param scaleWidth    scaling ration for width (between 0 and 1)
-     * @param scaleHeight   scaling ratio for height (between 0 and 1)
-     * @return the created thumbnail
+     * @param bucket     bucket that contains the object
+     * @param objectName name of the object
+     * @return true if the object must be processed
      */
-    private BufferedImage scaleImage(BufferedImage originalImage, double scaleWidth, double scaleHeight) {
+    private boolean acceptsName(String bucket, String objectName) {
 
-        // Evaluate scaled width and height for thumbnail
-        int targetWidth = (int) Math.ceil(originalImage.getWidth() * scaleWidth);
-        int targetHeight = (int) Math.ceil(originalImage.getHeight() * scaleHeight);
+        // The renditions and the archived originals are only written to bucketOut, the same names in another
+        // bucket are originals uploaded by the users
+        if (bucket.equals(bucketOut)) {
+            if (!archivePrefix.isEmpty() && objectName.startsWith(archivePrefix)) {
+                return false;
+            }
+            if (!isOriginal(objectName)) {
+                return false;
+            }
+        }
+        return objectNamePattern == null || objectNamePattern.matcher(objectName).matches();
 
-        // Scale the image
-        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D graphics2D = resizedImage.createGraphics();
-        graphics2D.drawImage(originalImage, 0, 0, targetWidth, targetHeight, null);
-        graphics2D.scale(scaleWidth, scaleHeight);
-        graphics2D.dispose();
+    }
+
+    /**
+     * Move a rejected object of bucketIn to rejectBucket, if configured, so that it is not listed by the backfills.
+     *
+     * @param sourceBucket bucket that contains the object
+     * @param fileName     name of the object
+     */
+    private void routeRejected(String sourceBucket, String fileName) {
 
-        return resizedImage;
+        Logger logger = LoggerFactory.getLogger(ThumbnailGeneratorFunction.class);
+
+        if (rejectBucket.isEmpty() || !sourceBucket.equals(bucketIn)) {
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(await(storage.copyObject(bucketIn, fileName, rejectBucket, fileName, remainingNanos())))) {
+                storage.deleteObject(bucketIn, fileName);
+                logger.info("Moved rejected file {} to bucket {}", fileName, rejectBucket);
+            } else {
+                logger.error("Error moving rejected file {} to bucket {}", fileName, rejectBucket);
+            }
+        } catch (Exception e) {
+            logger.error("Error moving rejected file {} to bucket {}: {}", fileName, rejectBucket, e.getMessage());
+        }
+
+    }
+
+    /**
+     * Generate the renditions of an image. The images of bucketIn are then moved to bucketOut,
+     * while the images of other buckets, for example during a backfill of bucketOut, are left in place.
+     * The images already processed, and those whose renditions are up to date, are skipped.
+     *
+     * @param sourceBucket bucket that contains the image
+     * @param fileName     name of the image
+     * @return the result of the processing
+     * @throws Exception if the image cannot be processed
+     */
+    private ProcessingResult processObject(String sourceBucket, String fileName) throws Exception {
+
+        Logger logger = LoggerFactory.getLogger(ThumbnailGeneratorFunction.class);
+
+        logger.info("Processing file: {}", fileName);
+
+        // A cheap HEAD of the source tells if the image still exists and identifies its content
+        long headStart = System.nanoTime();
+        ObjectMetadata source = storage.headObject(sourceBucket, fileName);
+        metrics.recordSince(InvocationMetrics.Stage.HEAD, headStart);
+        if (source == null) {
+            logger.info("File {} not found, it has already been processed", fileName);
+            return ProcessingResult.skipped(fileName, "Source object not found");
+        }
+
+        // Objects that are not images, or that are too large, are rejected before their download
+        long preflightStart = System.nanoTime();
+        ProcessingResult rejection = preflight.checkObject(sourceBucket, fileName, source);
+        metrics.recordSince(InvocationMetrics.Stage.PREFLIGHT, preflightStart);
+        if (rejection != null) {
+            logger.warn("File {} rejected: {}", fileName, rejection.getMessage());
+            routeRejected(sourceBucket, fileName);
+            return rejection;
+        }
+
+        String fingerprint = IdempotencyIndex.fingerprint(source);
+        List<String> renditionHashes = new ArrayList<>();
+        for (Rendition rendition : renditions) {
+            renditionHashes.add(IdempotencyIndex.hash(fingerprint, renderingParameters(rendition)));
+        }
+
+        // The duplicates of an event processed recently by this container are skipped without any other request.
+        // The key uses the entity tag, so a new upload of the same file is still archived
+        String key = IdempotencyIndex.hash(sourceBucket + "/" + fileName + "@" + source.getETag(), String.join(",", renditionHashes));
+        if (!idempotencyIndex.claim(key)) {
+            logger.info("File {} skipped, duplicate of a recent event", fileName);
+            return ProcessingResult.skipped(fileName, "Duplicate of a recent event");
+        }
+
+        // A failed image must be processed again when the event is delivered again
+        try {
+            ProcessingResult result = processObject(sourceBucket, fileName, source, renditionHashes);
+            if (result.getStatus() == ProcessingResult.Status.FAILED) {
+                idempotencyIndex.release(key);
+            }
+            return result;
+        } catch (Exception e) {
+            idempotencyIndex.release(key);
+            throw e;
+        }
+
+    }
+
+    /**
+     * Download the whole content of an image, in parallel ranges for the large images.
+     *
+     * @param sourceBucket bucket that contains the image
+     * @param fileName     name of the image
+     * @param source       metadata of the image
+     * @param keepContent  true if the content is needed after the decode, to archive it
+     * @return the content of the image, whose memory must be released once used, or null if it is decoded while it is streamed
+     * @throws IOException if the image cannot be downloaded
+     */
+    private byte[] downloadSource(String sourceBucket, String fileName, ObjectMetadata source, boolean keepContent) throws IOException {
+
+        long length = source.getContentLength();
+        if (!downloader.isParallel(length) && !(keepContent && length > 0 && length <= downloadMaxSize)) {
+            return null;
+        }
+        // The content takes its bytes from the memory of the images, when they are taken by the other images it is streamed
+        if (!imageMemory.tryReserveBuffer(length)) {
+            LoggerFactory.getLogger(ThumbnailGeneratorFunction.class).debug("No memory to download file {}, it is streamed", fileName);
+            return null;
+        }
+
+        InvocationMetrics metrics = this.metrics;
+        long getStart = System.nanoTime();
+        byte[] content;
+        try {
+            content = downloader.download(sourceBucket, fileName, length, source.getETag());
+        } catch (IOException | RuntimeException e) {
+            imageMemory.releaseBuffer(length);
+            throw e;
+        }
+        metrics.recordSince(InvocationMetrics.Stage.GET, getStart);
+        metrics.addBytesIn(content.length);
+        return content;
+
+    }
+
+    /**
+     * Decode an image, from its downloaded content without copies, or while it is streamed from the storage.
+     * The image is decoded already subsampled towards the size of the largest rendition, to keep the heap bounded.
+     *
+     * @param sourceBucket bucket that contains the image
+     * @param fileName     name of the image
+     * @param content      content of the image, or null to stream it
+     * @return the decoded image
+     * @throws IOException if the image cannot be downloaded or decoded
+     */
+    private DecodedImage decodeSource(String sourceBucket, String fileName, byte[] content) throws IOException {
+
+        InvocationMetrics metrics = this.metrics;
+        DecodedImage decodedImage;
+
+        if (content != null) {
+            long decodeStart = System.nanoTime();
+            try (ImageInputStream iis = new ByteArrayImageInputStream(content)) {
+                decodedImage = decodePlanner.decode(iis, this::largestRenditionSize);
+            }
+            metrics.recordSince(InvocationMetrics.Stage.DECODE, decodeStart);
+            return decodedImage;
+        }
+
+        long getStart = System.nanoTime();
+        try (InputStream in = metrics.countBytesIn(storage.getObject(sourceBucket, fileName))) {
+            metrics.recordSince(InvocationMetrics.Stage.GET, getStart);
+            long decodeStart = System.nanoTime();
+            try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+                decodedImage = decodePlanner.decode(iis, this::largestRenditionSize);
+            }
+            metrics.recordSince(InvocationMetrics.Stage.DECODE, decodeStart);
+        }
+        return decodedImage;
+
+    }
+
+    /**
+     * Choose how an original of bucketIn is archived.
+     *
+     * @param source metadata of the original
+     * @return the strategy, never AUTO
+     */
+    private ArchiveStrategy archiveStrategy(ObjectMetadata source) {
+
+        if (archiveStrategy != ArchiveStrategy.AUTO) {
+            return archiveStrategy;
+        }
+        if (bucketIn.equals(bucketOut)) {
+            return ArchiveStrategy.RENAME;
+        }
+        // A small original is uploaded again faster than a copy is completed, that needs a work request to be polled
+        long length = source.getContentLength();
+        return length > 0 && length <= archiveReuploadMaxSize ? ArchiveStrategy.REUPLOAD : ArchiveStrategy.COPY;
+
+    }
+
+    /**
+     * Start the server-side copy of an original of bucketIn to bucketOut.
+     *
+     * @param fileName name of the original
+     * @return the future result of the copy
+     */
+    private CompletableFuture<Boolean> startCopy(String fileName) {
+
+        InvocationMetrics metrics = this.metrics;
+        long copyStart = System.nanoTime();
+        return storage.copyObject(bucketIn, fileName, bucketOut, archivePrefix + fileName, remainingNanos())
+                      .whenComplete((copied, e) -> metrics.recordSince(InvocationMetrics.Stage.COPY, copyStart));
+
+    }
+
+    /**
+     * Get the time left to the current invocation to wait for a copy or for the memory of an image.
+     *
+     * @return the time in nanoseconds, never negative
+     */
+    private long remainingNanos() {
+        return Math.max(0, invocationDeadline - System.nanoTime());
+    }
+
+    /**
+     * Start the upload to bucketOut of the downloaded content of an original of bucketIn, with its content type and metadata.
+     *
+     * @param fileName name of the original
+     * @param source   metadata of the original
+     * @param content  content of the original
+     * @return the future result of the upload
+     */
+    private CompletableFuture<Boolean> startReupload(String fileName, ObjectMetadata source, byte[] content) {
+
+        InvocationMetrics metrics = this.metrics;
+        long copyStart = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = new ByteArrayInputStream(content)) {
+                storage.putObject(bucketOut, archivePrefix + fileName, in, content.length, source.getContentType(), source.getUserMetadata());
+                return Boolean.TRUE;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                metrics.recordSince(InvocationMetrics.Stage.COPY, copyStart);
+            }
+        }, archiveExecutor);
+
+    }
+
+    /**
+     * Generate the renditions of an image that are not up to date and archive the image.
+     *
+     * @param sourceBucket    bucket that contains the image
+     * @param fileName        name of the image
+     * @param source          metadata of the image
+     * @param renditionHashes hash stamped on each rendition, in the same order of the renditions
+     * @return the result of the processing
+     * @throws Exception if the image cannot be processed
+     */
+    private ProcessingResult processObject(String sourceBucket, String fileName, ObjectMetadata source, List<String> renditionHashes) throws Exception {
+
+        Logger logger = LoggerFactory.getLogger(ThumbnailGeneratorFunction.class);
+        InvocationMetrics metrics = this.metrics;
+
+        // The originals of other buckets, for example during a backfill of bucketOut, are left in place
+        ArchiveStrategy strategy = sourceBucket.equals(bucketIn) ? archiveStrategy(source) : ArchiveStrategy.SKIP;
+
+        // The server-side copy of the original image to bucketOut does not depend on the thumbnails,
+        // so it is started right away and it runs while the image is downloaded, decoded and encoded
+        CompletableFuture<Boolean> copy = strategy == ArchiveStrategy.COPY ? startCopy(fileName) : null;
+
+        CompletableFuture<Void> thumbnails;
+        boolean current = skipUnchanged && renditionsCurrent(fileName, renditionHashes);
+        if (current) {
+            // The renditions were generated from the same content with the same parameters, only the archive is left to do
+            logger.info("Renditions of file {} are already up to date", fileName);
+            thumbnails = CompletableFuture.completedFuture(null);
+        } else {
+            // Read file from sourceBucket, the content is kept to upload it again to bucketOut
+            byte[] content = downloadSource(sourceBucket, fileName, source, strategy == ArchiveStrategy.REUPLOAD);
+            DecodedImage decodedImage;
+            try {
+                if (strategy == ArchiveStrategy.REUPLOAD && content != null) {
+                    copy = startReupload(fileName, source, content);
+                }
+                decodedImage = decodeSource(sourceBucket, fileName, content);
+            } finally {
+                // The memory of the content is released once it is decoded and, when it is uploaded again, archived
+                if (content != null) {
+                    long contentLength = content.length;
+                    if (copy != null && strategy == ArchiveStrategy.REUPLOAD) {
+                        copy.whenComplete((copied, e) -> imageMemory.releaseBuffer(contentLength));
+                    } else {
+                        imageMemory.releaseBuffer(contentLength);
+                    }
+                }
+            }
+            metrics.addPixelsDecoded((long) decodedImage.getImage().getWidth() * decodedImage.getImage().getHeight());
+
+            // Generate the renditions, each one scaled from the previous one, and upload them in parallel.
+            // The memory of the decoded image is given back to the other images once all the renditions are uploaded
+            try {
+                thumbnails = generateRenditions(decodedImage, fileName, renditionHashes);
+            } catch (RuntimeException | Error e) {
+                decodedImage.release();
+                throw e;
+            }
+            thumbnails.whenComplete((none, e) -> decodedImage.release());
+        }
+        // The content has not been downloaded, or it is too large to be held in the heap
+        if (strategy == ArchiveStrategy.REUPLOAD && copy == null) {
+            strategy = ArchiveStrategy.COPY;
+            copy = startCopy(fileName);
+        }
+
+        if (strategy == ArchiveStrategy.SKIP) {
+            await(thumbnails);
+            logger.info("Finished processing file: {}", fileName);
+            return current ? ProcessingResult.skipped(fileName, "Renditions already up to date") : ProcessingResult.processed(fileName);
+        }
+
+        // The source object is moved only after the successful upload of all the thumbnails
+        ArchiveStrategy archiveWith = strategy;
+        CompletableFuture<Boolean> archiveCopy = copy != null ? copy : CompletableFuture.completedFuture(Boolean.TRUE);
+        boolean archived = await(thumbnails.thenCombine(archiveCopy, (none, copied) -> copied)
+                                           .thenApplyAsync(copied -> {
+                                               logger.info("Finished processing file: {}", fileName);
+                                               try {
+                                                   if (archiveWith == ArchiveStrategy.RENAME) {
+                                                       long renameStart = System.nanoTime();
+                                                       storage.renameObject(bucketIn, fileName, archivePrefix + fileName, source.getETag());
+                                                       metrics.recordSince(InvocationMetrics.Stage.COPY, renameStart);
+                                                       logger.info("Renamed original file to: {}", archivePrefix + fileName);
+                                                       return true;
+                                                   }
+                                                   if (!Boolean.TRUE.equals(copied)) {
+                                                       logger.error("Error copying original file to destination: {}", fileName);
+                                                       return false;
+                                                   }
+                                                   logger.info("Copied original file to destination: {}", fileName);
+                                                   long deleteStart = System.nanoTime();
+                                                   storage.deleteObject(bucketIn, fileName);
+                                                   metrics.recordSince(InvocationMetrics.Stage.DELETE, deleteStart);
+                                               } catch (IOException e) {
+                                                   throw new CompletionException(e);
+                                               }
+                                               logger.info("Deleted file: {}", fileName);
+                                               return true;
+                                           }, renditionExecutor));
+
+        if (!archived) {
+            return ProcessingResult.failed(fileName, "Error copying original file to destination");
+        }
+        return current ? ProcessingResult.skipped(fileName, "Renditions already up to date") : ProcessingResult.processed(fileName);
+
+    }
+
+    /**
+     * Complete the metrics of an invocation and log them as a single JSON line.
+     *
+     * @param metrics  metrics of the invocation
+     * @param response results of the objects processed by the invocation
+     * @param error    message of the error that stopped the invocation, may be null
+     * @return the metrics of the invocation
+     */
+    private ObjectNode logMetrics(InvocationMetrics metrics, BatchResponse response, String error) {
+
+        ObjectNode invocationMetrics = metrics.complete(mapper, response, error);
+        metricsLogger.info("{}", invocationMetrics);
+        return invocationMetrics;
 
     }
 
@@ -157,6 +1090,9 @@ public class ThumbnailGeneratorFunction {
      * Object Storage and then it creates a thumbnail
      * with a scaled size defined via environment variables. The result is copied to
      * another bucket along with the original image.
+     * The payload can also be a JSON array of events, or a backfill command that
+     * processes the images already stored in a bucket: in both cases the response
+     * is a JSON document with the result of each image.
      *
      * @param ctx          Oracle Functions runtime context
      * @param eventPayload Oracle Events payload passed to function
@@ -175,13 +1111,9 @@ public class ThumbnailGeneratorFunction {
             logger.info("OCI_RESOURCE_PRINCIPAL_PRIVATE_PEM: {}", ociResourcePrincipalPEM);
         }
 
-        // Create a client to access the Object Storage service
-        ObjectStorage objStorageClient = null;
-        objStorageClient = ObjectStorageClient.builder().build(provider);
-
-        // Check if the OCI client is available, if not it exits with an error
-        if (objStorageClient == null) {
-            logger.error("There was a problem creating the ObjectStorageClient object. Please check logs.");
+        // Check if the storage is available, if not it exits with an error
+        if (storage == null) {
+            logger.error("There was a problem creating the storage service. Please check logs.");
             return ERRORMSG;
         }
 
@@ -191,101 +1123,96 @@ public class ThumbnailGeneratorFunction {
             return ERRORMSG;
         }
 
-        // Check if the thumbnail extension is supported, if not it exits with an error
-        if (!Arrays.asList(imageFormats).contains(imageFormat)) {
-            logger.error("The format {} specified for output images is not supported, please choose one among: bmp, gif, jpeg, jpg, png, tif, tiff, wbmp", imageFormat);
-            return ERRORMSG;
+        // Check if the thumbnail extensions are supported, if not it exits with an error
+        for (Rendition rendition : renditions) {
+            if (!Arrays.asList(imageFormats).contains(rendition.getFormat()) && !FormatSelector.AUTO.equals(rendition.getFormat())) {
+                logger.error("The format {} specified for output images is not supported, please choose one among: auto, bmp, gif, jpeg, jpg, png, tif, tiff, wbmp", rendition.getFormat());
+                return ERRORMSG;
+            }
         }
 
         // Generate the thumbnail for the image uploaded into input bucket
+        InvocationMetrics metrics = new InvocationMetrics(histograms);
+        this.metrics = metrics;
+        invocationDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(functionTimeout) - RESPONSE_MARGIN_NANOS;
         try {
 
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectStorageCloudEvent osCloudEvent = mapper.readValue(eventPayload, ObjectStorageCloudEvent.class);
-            String fileName = osCloudEvent.getData().get("resourceName").toString();
+            JsonNode payload = mapper.readTree(eventPayload);
 
-            logger.info("Processing file: {}", fileName);
-
-            // Read file from bucketIn
-            GetObjectResponse getObjectResponse = objStorageClient.getObject(GetObjectRequest.builder()
-                                                                                .namespaceName(nameSpace)
-                                                                                .bucketName(bucketIn)
-                                                                                .objectName(fileName)
-                                                                                .build());
-            // Generate the thumbnail
-            ByteArrayOutputStream os = new ByteArrayOutputStream();
-            BufferedImage originalImage = ImageIO.read(getObjectResponse.getInputStream());
-            BufferedImage outputImage = scaleImage(originalImage, scalingFactor, scalingFactor);
-            ImageIO.write(outputImage, imageFormat, os);
-
-            // Put file to bucketOut
-            ByteArrayInputStream is = new ByteArrayInputStream(os.toByteArray());
-            PutObjectResponse putObjectResponse = objStorageClient.putObject(PutObjectRequest.builder()
-                                                                                .namespaceName(nameSpace)
-                                                                                .bucketName(bucketOut)
-                                                                                .objectName(namePrefix + fileName)
-                                                                                .putObjectBody(is)
-                                                                                .build());
-
-            if (putObjectResponse == null) {
-                logger.error("Error creating thumbnail file: {}{}", namePrefix, fileName);
-                return ERRORMSG;
-            } else {
-                logger.info("Created thumbnail file: {}{}", namePrefix, fileName);
+            // A JSON array of events is processed as a batch
+            if (payload.isArray()) {
+                List<String> fileNames = new ArrayList<>();
+                List<ProcessingResult> filtered = new ArrayList<>();
+                for (JsonNode event : payload) {
+                    ObjectStorageCloudEvent osCloudEvent = mapper.treeToValue(event, ObjectStorageCloudEvent.class);
+                    String fileName = osCloudEvent.getData().get("resourceName").toString();
+                    ProcessingResult skipped = preflight.checkEvent(osCloudEvent, fileName);
+                    if (skipped == null) {
+                        fileNames.add(fileName);
+                    } else {
+                        filtered.add(skipped);
+                    }
+                }
+                BatchResponse response = batchProcessor.processObjects(bucketIn, fileNames);
+                filtered.forEach(response::add);
+                ObjectNode invocationMetrics = logMetrics(metrics, response, null);
+                if (metricsInResponse) {
+                    response.setMetrics(invocationMetrics);
+                }
+                return mapper.writeValueAsString(response);
             }
 
-            logger.info("Finished processing file: {}", fileName);
-
-            is.close();
-            os.close();
-
-            // To use the CopyObject APIs you need to allow Object Storage to access the tenancy
-            // Copy the original image along with the thumbnail in bucketOut
-            CopyObjectResponse copyOriginalImage = objStorageClient.copyObject(CopyObjectRequest.builder()
-                                                                                .namespaceName(nameSpace)
-                                                                                .bucketName(bucketIn)
-                                                                                .copyObjectDetails(CopyObjectDetails.builder()
-                                                                                                    .sourceObjectName(fileName)
-                                                                                                    .destinationRegion(region)
-                                                                                                    .destinationNamespace(nameSpace)
-                                                                                                    .destinationBucket(bucketOut)
-                                                                                                    .destinationObjectName(fileName)
-                                                                                                    .build())
-                                                                                .build());
-
-            // The call is asynchronous, wait until it is finished
-            GetWorkRequestResponse getWorkRequestResponse = objStorageClient.getWaiters().forWorkRequest(
-                                                                                            GetWorkRequestRequest.builder()
-                                                                                                .workRequestId(copyOriginalImage.getOpcWorkRequestId())
-                                                                                            .build())
-                                                                                          .execute();
-            WorkRequest.Status workRequestStatus = getWorkRequestResponse.getWorkRequest().getStatus();
-
-            if (workRequestStatus == WorkRequest.Status.Completed) {
-                logger.info("Copied original file to destination: {}", fileName);
-
-                // Delete the source object only after the successful copy of the file
-                final DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
-                                                                    .namespaceName(nameSpace)
-                                                                    .bucketName(bucketIn)
-                                                                    .objectName(fileName)
-                                                                    .build();
-                DeleteObjectResponse deleteProcessedImage = objStorageClient.deleteObject(deleteObjectRequest);
-                if (deleteProcessedImage == null) {
-                    logger.error("Error deleting file: {}", fileName);
-                    return ERRORMSG;
-                } else {
-                    logger.info("Deleted file: {}", fileName);
+            // A backfill command processes the images already stored in a bucket, by default bucketIn
+            if (payload.has("backfill")) {
+                BackfillCommand command = mapper.treeToValue(payload.get("backfill"), BackfillCommand.class);
+                if (command.getBucket() == null) {
+                    command.setBucket(bucketIn);
+                }
+                String backfillBucket = command.getBucket();
+                BatchResponse response = batchProcessor.backfill(command, objectName -> acceptsName(backfillBucket, objectName));
+                ObjectNode invocationMetrics = logMetrics(metrics, response, null);
+                if (metricsInResponse) {
+                    response.setMetrics(invocationMetrics);
                 }
+                return mapper.writeValueAsString(response);
             }
 
-            objStorageClient.close();
+            ObjectStorageCloudEvent osCloudEvent = mapper.treeToValue(payload, ObjectStorageCloudEvent.class);
+            String fileName = osCloudEvent.getData().get("resourceName").toString();
 
-            logger.info("Thumbnail generation completed, please see the output in bucket {}", bucketOut);
-            return "Thumbnail generation completed, please see the output in bucket " + bucketOut;
+            // The events that are not relevant are skipped without any request
+            ProcessingResult result = preflight.checkEvent(osCloudEvent, fileName);
+            if (result == null) {
+                result = processObject(bucketIn, fileName);
+            } else {
+                logger.info("Event of file {} skipped: {}", fileName, result.getMessage());
+            }
+            BatchResponse response = new BatchResponse();
+            response.add(result);
+            ObjectNode invocationMetrics = logMetrics(metrics, response, null);
+
+            // A failed image is reported as an error, so that the event is delivered again
+            String message;
+            if (result.getStatus() == ProcessingResult.Status.REJECTED) {
+                message = "The file " + fileName + " was rejected: " + result.getMessage();
+            } else if (result.getStatus() == ProcessingResult.Status.FAILED) {
+                logger.error("Thumbnail generation of file {} failed: {}", fileName, result.getMessage());
+                message = ERRORMSG;
+            } else {
+                logger.info("Thumbnail generation completed, please see the output in bucket {}", bucketOut);
+                message = "Thumbnail generation completed, please see the output in bucket " + bucketOut;
+            }
+            if (metricsInResponse) {
+                ObjectNode document = mapper.createObjectNode();
+                document.put("message", message);
+                document.set("metrics", invocationMetrics);
+                return mapper.writeValueAsString(document);
+            }
+            return message;
 
         } catch (Exception e) {
-            logger.error("Error during thumbnail generation: {}", e.getMessage());
+            logger.error("Error during thumbnail generation: {}", e.getMessage(), e);
+            logMetrics(metrics, new BatchResponse(), String.valueOf(e.getMessage()));
             return ERRORMSG;
         }
 
@@ -0,0 +1,225 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import com.fnproject.fn.api.RuntimeContext;
+import com.fnproject.fn.testing.*;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class ArchiveStrategyTest {
+
+    @Rule
+    public final FnTestingRule testing = FnTestingRule.createDefault();
+
+    private ObjectStorageStandIn objectStorage;
+    private SyntheticEvents events;
+
+    @Before
+    public void setUp() throws Exception {
+
+        objectStorage = new ObjectStorageStandIn();
+        objectStorage.configure(testing);
+        testing.setConfig("BUCKET_IN", "imageIn");
+        testing.setConfig("BUCKET_OUT", "imageOut");
+        events = new SyntheticEvents(objectStorage.getStorage(), "imageIn", "640x480", "jpg", 42);
+
+    }
+
+    @After
+    public void tearDown() {
+        objectStorage.close();
+    }
+
+    @Test
+    public void shouldParseNamesIgnoringCase() {
+
+        assertEquals(ArchiveStrategy.AUTO, ArchiveStrategy.forName("auto"));
+        assertEquals(ArchiveStrategy.REUPLOAD, ArchiveStrategy.forName(" ReUpload "));
+        assertEquals(ArchiveStrategy.RENAME, ArchiveStrategy.forName("RENAME"));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownName() {
+        ArchiveStrategy.forName("move");
+    }
+
+    @Test
+    public void shouldReuploadSmallOriginalsInAutoMode() {
+
+        // The copies of the stand-in fail, so the original is archived only if it is uploaded again
+        objectStorage.setFailingCopies(true);
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals("Thumbnail generation completed, please see the output in bucket imageOut", testing.getOnlyResult().getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageOut", event.getObjectName()));
+        assertNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldCopyLargeOriginalsInAutoMode() {
+
+        testing.setConfig("ARCHIVE_REUPLOAD_MAX_MB", "0");
+        objectStorage.setFailingCopies(true);
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals(ThumbnailGeneratorFunction.ERRORMSG, testing.getOnlyResult().getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldCopyOriginalsAboveTheDownloadLimit() {
+
+        // The original is streamed to the decoder, there is no content to upload again
+        testing.setConfig("ARCHIVE_STRATEGY", "reupload");
+        testing.setConfig("DOWNLOAD_MAX_MB", "0");
+        objectStorage.setFailingCopies(true);
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals(ThumbnailGeneratorFunction.ERRORMSG, testing.getOnlyResult().getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageOut", "scaled-" + event.getObjectName()));
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldCopyOriginalsWithCurrentRenditions() {
+
+        // A first run generates the renditions and leaves the original in place
+        testing.setConfig("ARCHIVE_STRATEGY", "skip");
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
+        // The original is not downloaded again, so it can only be copied
+        testing.setConfig("ARCHIVE_STRATEGY", "reupload");
+        objectStorage.setFailingCopies(true);
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals(ThumbnailGeneratorFunction.ERRORMSG, testing.getResults().get(1).getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+        assertNull(objectStorage.getStorage().headObject("imageOut", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldSkipArchiveInSameBucketWithoutPrefix() {
+
+        testing.setConfig("BUCKET_OUT", "imageIn");
+        testing.setConfig("ARCHIVE_STRATEGY", "copy");
+        objectStorage.setFailingCopies(true);
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals("Thumbnail generation completed, please see the output in bucket imageIn", testing.getOnlyResult().getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", "scaled-" + event.getObjectName()));
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldRenameWithinSameBucket() {
+
+        testing.setConfig("BUCKET_OUT", "imageIn");
+        testing.setConfig("ARCHIVE_STRATEGY", "rename");
+        testing.setConfig("ARCHIVE_PREFIX", "archive/");
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals("Thumbnail generation completed, please see the output in bucket imageIn", testing.getOnlyResult().getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", "archive/" + event.getObjectName()));
+        assertNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldRejectRenameBetweenBuckets() {
+        assertRejected(Map.of("BUCKET_IN", "imageIn", "BUCKET_OUT", "imageOut", "ARCHIVE_STRATEGY", "rename", "ARCHIVE_PREFIX", "archive/"));
+    }
+
+    @Test
+    public void shouldRejectRenameWithoutPrefix() {
+        assertRejected(Map.of("BUCKET_IN", "imageIn", "BUCKET_OUT", "imageIn", "ARCHIVE_STRATEGY", "rename"));
+    }
+
+    /**
+     * Configure a function with the in-memory storage and check that the archive strategy is rejected.
+     */
+    private static void assertRejected(Map<String, String> settings) {
+
+        Map<String, String> configuration = new HashMap<>(settings);
+        configuration.put("STORAGE_BACKEND", "memory");
+        configuration.put("OCI_REGION", "test");
+        configuration.put("OCI_NAMESPACE", "test");
+        configuration.put("WARM_UP", "false");
+        RuntimeContext ctx = (RuntimeContext) Proxy.newProxyInstance(RuntimeContext.class.getClassLoader(),
+                                                                     new Class<?>[] { RuntimeContext.class },
+                                                                     (proxy, method, arguments) -> {
+            switch (method.getName()) {
+                case "getConfigurationByKey":
+                    return Optional.ofNullable(configuration.get((String) arguments[0]));
+                case "getConfiguration":
+                    return configuration;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        try {
+            new ThumbnailGeneratorFunction().config(ctx);
+            fail("The archive strategy rename was accepted");
+        } catch (RuntimeException e) {
+            assertEquals("The archive strategy rename requires BUCKET_OUT equal to BUCKET_IN and an ARCHIVE_PREFIX", e.getMessage());
+        }
+
+    }
+
+}
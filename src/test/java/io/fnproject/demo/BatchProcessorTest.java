@@ -0,0 +1,103 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class BatchProcessorTest {
+
+    private final InMemoryStorageService storage = new InMemoryStorageService();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @Before
+    public void setUp() {
+        for (String objectName : new String[] { "a.jpg", "b.jpg", "c.jpg", "scaled-a.jpg", "d.jpg", "e.jpg" }) {
+            storage.putBytes("images", objectName, new byte[] { 1 }, null);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldResumeBackfillFromContinuationToken() throws Exception {
+
+        BatchProcessor batchProcessor = new BatchProcessor(storage, executor, (bucket, objectName) -> ProcessingResult.processed(objectName),
+                                                           TimeUnit.SECONDS.toNanos(60), 2);
+        BackfillCommand command = new BackfillCommand();
+        command.setBucket("images");
+        command.setLimit(4);
+
+        BatchResponse first = batchProcessor.backfill(command, objectName -> !objectName.startsWith("scaled-"));
+        assertEquals(4, first.getProcessed());
+        assertEquals("e.jpg", first.getContinuationToken());
+
+        command.setStart(first.getContinuationToken());
+        BatchResponse second = batchProcessor.backfill(command, objectName -> !objectName.startsWith("scaled-"));
+        assertEquals(1, second.getProcessed());
+        assertEquals(1, second.getSkipped());
+        assertNull(second.getContinuationToken());
+
+    }
+
+    @Test
+    public void shouldDeferObjectsOverTheTimeBudget() {
+
+        BatchProcessor batchProcessor = new BatchProcessor(storage, executor, (bucket, objectName) -> ProcessingResult.processed(objectName), 0, 10);
+
+        BatchResponse response = batchProcessor.processObjects("images", List.of("a.jpg", "b.jpg"));
+        assertEquals(2, response.getDeferred());
+
+    }
+
+    @Test
+    public void shouldReportFailuresPerObject() {
+
+        BatchProcessor batchProcessor = new BatchProcessor(storage, executor, (bucket, objectName) -> {
+            if (objectName.equals("b.jpg")) {
+                throw new IllegalStateException("broken");
+            }
+            return ProcessingResult.processed(objectName);
+        }, TimeUnit.SECONDS.toNanos(60), 10);
+
+        BatchResponse response = batchProcessor.processObjects("images", List.of("a.jpg", "b.jpg", "c.jpg"));
+        assertEquals(2, response.getProcessed());
+        assertEquals(1, response.getFailed());
+        assertEquals("broken", response.getResults().get(1).getMessage());
+
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class DecodePlannerTest {
+
+    private static byte[] syntheticImage(String format, int width, int height) throws IOException {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics2D = image.createGraphics();
+        graphics2D.setColor(Color.ORANGE);
+        graphics2D.fillRect(0, 0, width, height);
+        graphics2D.dispose();
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageIO.write(image, format, os);
+        return os.toByteArray();
+
+    }
+
+    private static DecodedImage decode(byte[] content, long memoryBudget, int divisor) throws IOException {
+
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(content))) {
+            return new DecodePlanner(memoryBudget).decode(iis, source -> new Dimension(source.width / divisor, source.height / divisor));
+        }
+
+    }
+
+    @Test
+    public void shouldSubsampleTowardsTheTargetSize() throws IOException {
+
+        for (String format : new String[] { "jpg", "png", "bmp", "gif", "tif" }) {
+            DecodedImage decodedImage = decode(syntheticImage(format, 2000, 1000), 64L * 1024 * 1024, 10);
+            assertEquals(format, 2000, decodedImage.getSourceWidth());
+            assertEquals(format, 1000, decodedImage.getSourceHeight());
+            assertEquals(format, 5, decodedImage.getSubsampling());
+            assertEquals(format, 400, decodedImage.getImage().getWidth());
+            assertEquals(format, 200, decodedImage.getImage().getHeight());
+        }
+
+    }
+
+    @Test
+    public void shouldRaiseSubsamplingToFitTheBudget() throws IOException {
+
+        // 400x200 at 3 bytes per pixel does not fit in 200 KB, 334x167 does
+        DecodedImage decodedImage = decode(syntheticImage("png", 2000, 1000), 200 * 1024, 10);
+        assertTrue(decodedImage.getSubsampling() > 5);
+        assertTrue(decodedImage.getImage().getWidth() >= 200);
+
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectThumbnailsOverTheBudget() throws IOException {
+        decode(syntheticImage("png", 2000, 1000), 10 * 1024, 10);
+    }
+
+    @Test
+    public void shouldReserveTheDecodedImageInTheSharedBudget() throws IOException {
+
+        MemoryBudget budget = new MemoryBudget(2L * 1024 * 1024);
+        DecodePlanner planner = new DecodePlanner(budget, () -> 0);
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(syntheticImage("png", 2000, 1000)))) {
+            DecodedImage decodedImage = planner.decode(iis, source -> new Dimension(source.width / 10, source.height / 10));
+            assertEquals(400 * 200 * 3, budget.getReserved());
+            decodedImage.release();
+            decodedImage.release();
+            assertEquals(0, budget.getReserved());
+        }
+
+    }
+
+    @Test
+    public void shouldWaitForTheMemoryOnlyUntilTheDeadline() throws IOException {
+
+        // The budget is taken by other images, the decode gives up at the deadline instead of waiting a fixed time
+        MemoryBudget budget = new MemoryBudget(2L * 1024 * 1024);
+        budget.reserve(1024 * 1024, 0);
+        budget.reserve(900 * 1024, 0);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        DecodePlanner planner = new DecodePlanner(budget, () -> Math.max(0, deadline - System.nanoTime()));
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(syntheticImage("png", 2000, 1000)))) {
+            planner.decode(iis, source -> new Dimension(source.width / 10, source.height / 10));
+            fail("The image was decoded without memory");
+        } catch (IOException e) {
+            assertTrue(System.nanoTime() - deadline < TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(1924 * 1024, budget.getReserved());
+
+    }
+
+}
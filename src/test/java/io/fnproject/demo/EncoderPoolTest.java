@@ -0,0 +1,196 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class EncoderPoolTest {
+
+    private static final BufferedImage image = createImage();
+
+    private static BufferedImage createImage() {
+
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, 320, 240, Color.BLUE));
+        g.fillRect(0, 0, 320, 240);
+        g.setColor(Color.WHITE);
+        g.drawString("Thumbnail", 100, 120);
+        g.dispose();
+        return image;
+
+    }
+
+    private static EncoderPool defaults() {
+        return new EncoderPool(0.75f, false, false, "420", 4, "none", 2);
+    }
+
+    private static byte[] encode(EncoderPool pool, String format) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            pool.write(image, format, out);
+        }
+        return bytes.toByteArray();
+
+    }
+
+    private static byte[] encodeWithImageIO(String format) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, format, bytes));
+        return bytes.toByteArray();
+
+    }
+
+    @Test
+    public void shouldMatchImageIOWithDefaultSettings() throws IOException {
+
+        EncoderPool pool = defaults();
+
+        assertArrayEquals(encodeWithImageIO("jpg"), encode(pool, "jpg"));
+        assertArrayEquals(encodeWithImageIO("png"), encode(pool, "png"));
+        // The writers are reused
+        assertArrayEquals(encodeWithImageIO("jpg"), encode(pool, "jpg"));
+
+    }
+
+    @Test
+    public void shouldApplyJpegQualityAndCompressionLevel() throws IOException {
+
+        assertTrue(encode(new EncoderPool(0.4f, false, false, "420", 4, "none", 1), "jpg").length
+                   < encode(defaults(), "jpg").length);
+        assertTrue(encode(new EncoderPool(0.75f, false, false, "420", 9, "none", 1), "png").length
+                   <= encode(new EncoderPool(0.75f, false, false, "420", 0, "none", 1), "png").length);
+
+    }
+
+    @Test
+    public void shouldWriteJpegWithoutChromaSubsampling() throws IOException {
+
+        byte[] jpeg = encode(new EncoderPool(0.75f, true, true, "444", 4, "none", 1), "jpg");
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            ImageReader reader = readers.next();
+            reader.setInput(in);
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            Element tree = (Element) metadata.getAsTree("javax_imageio_jpeg_image_1.0");
+            NodeList components = tree.getElementsByTagName("componentSpec");
+            for (int i = 0; i < components.getLength(); i++) {
+                Element component = (Element) components.item(i);
+                assertEquals("1", component.getAttribute("HsamplingFactor"));
+                assertEquals("1", component.getAttribute("VsamplingFactor"));
+            }
+            // Progressive JPEGs have a scan for each pass
+            assertTrue(tree.getElementsByTagName("sos").getLength() > 1);
+            assertEquals(320, reader.getWidth(0));
+            reader.dispose();
+        }
+
+    }
+
+    @Test
+    public void shouldWriteCompressedTiff() throws IOException {
+
+        byte[] tiff = encode(new EncoderPool(0.75f, false, false, "420", 4, "lzw", 1), "tiff");
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(tiff));
+        assertEquals(320, decoded.getWidth());
+        assertEquals(image.getRGB(10, 10), decoded.getRGB(10, 10));
+        assertTrue(tiff.length < encode(defaults(), "tiff").length);
+
+    }
+
+    @Test
+    public void shouldDescribeSettingsOfFormat() {
+
+        EncoderPool pool = new EncoderPool(0.9f, true, false, "444", 6, "Deflate", 1);
+
+        assertNotEquals(pool.describe("jpg"), defaults().describe("jpg"));
+        assertEquals(pool.describe("jpg"), pool.describe("jpeg"));
+        assertNotEquals(pool.describe("png"), defaults().describe("png"));
+        assertEquals(pool.describe("gif"), defaults().describe("gif"));
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownTiffCompression() {
+        new EncoderPool(0.75f, false, false, "420", 4, "zip", 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectUnsupportedFormat() throws IOException {
+        encode(defaults(), "xyz");
+    }
+
+    @Test
+    public void shouldAdaptLayoutToFormat() throws IOException {
+
+        BufferedImage transparent = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage gray = new BufferedImage(40, 30, BufferedImage.TYPE_BYTE_GRAY);
+        EncoderPool pool = defaults();
+
+        // PNG keeps the alpha and the gray, JPEG flattens the alpha on white, WBMP is black and white
+        assertSame(transparent, EncoderPool.encodable(transparent, "png"));
+        assertSame(gray, EncoderPool.encodable(gray, "jpeg"));
+        BufferedImage flattened = EncoderPool.encodable(transparent, "jpeg");
+        assertEquals(BufferedImage.TYPE_INT_RGB, flattened.getType());
+        assertEquals(0xffffffff, flattened.getRGB(20, 15));
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, EncoderPool.encodable(gray, "wbmp").getType());
+
+        for (String format : new String[] { "jpg", "bmp", "wbmp", "png" }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+                pool.write(transparent, format, out);
+            }
+            assertEquals(format, 40, ImageIO.read(new ByteArrayInputStream(bytes.toByteArray())).getWidth());
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class FormatSelectorTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private FormatSelector selector(double minPsnr) {
+        return new FormatSelector(new EncoderPool(0.75f, false, false, "420", 4, "none", 2), new ChunkPool(16384, 4), executor, minPsnr);
+    }
+
+    private static BufferedImage write(FormatSelector.Selection selection) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            selection.writeTo(out);
+        } finally {
+            selection.release();
+        }
+        return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+    }
+
+    private static BufferedImage chart() {
+
+        BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 400, 300);
+        Color[] colors = { Color.RED, Color.BLUE, Color.ORANGE, Color.GREEN };
+        for (int i = 0; i < colors.length; i++) {
+            g.setColor(colors[i]);
+            g.fillRect(40 + i * 90, 280 - 60 * (i + 1), 60, 60 * (i + 1));
+        }
+        g.dispose();
+        return image;
+
+    }
+
+    @Test
+    public void shouldWritePhotosAsJpeg() throws IOException {
+
+        BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < 300; y++) {
+            for (int x = 0; x < 400; x++) {
+                int noise = random.nextInt(32);
+                image.setRGB(x, y, new Color(Math.min(255, x / 2 + noise), Math.min(255, y / 2 + noise), 128 + noise).getRGB());
+            }
+        }
+
+        FormatSelector.Selection selection = selector(28).select(image);
+        assertEquals("jpg", selection.getFormat());
+        assertEquals("image/jpeg", selection.getContentType());
+        BufferedImage result = write(selection);
+        assertEquals(400, result.getWidth());
+        assertEquals(300, result.getHeight());
+
+    }
+
+    @Test
+    public void shouldWriteFlatGraphicsAsPalettePng() throws IOException {
+
+        BufferedImage image = chart();
+        FormatSelector.Selection selection = selector(28).select(image);
+        assertEquals("png", selection.getFormat());
+        assertEquals("image/png", selection.getContentType());
+
+        // The palette keeps every color of the chart exactly
+        BufferedImage result = write(selection);
+        assertTrue(result.getColorModel() instanceof IndexColorModel);
+        for (int y = 0; y < 300; y += 7) {
+            for (int x = 0; x < 400; x += 7) {
+                assertEquals(image.getRGB(x, y), result.getRGB(x, y));
+            }
+        }
+
+    }
+
+    @Test
+    public void shouldKeepTheColorsNotInTheRowsAnalyzed() throws IOException {
+
+        // Only the even rows are analyzed, the odd ones have more colors than a palette can hold
+        BufferedImage image = new BufferedImage(400, 256, BufferedImage.TYPE_INT_RGB);
+        for (int y = 1; y < 256; y += 2) {
+            for (int x = 0; x < 400; x++) {
+                image.setRGB(x, y, (y << 16) | x);
+            }
+        }
+
+        FormatSelector.Selection selection = selector(28).select(image);
+        assertEquals("png", selection.getFormat());
+        BufferedImage result = write(selection);
+        assertFalse(result.getColorModel() instanceof IndexColorModel);
+        assertEquals(image.getRGB(399, 255), result.getRGB(399, 255));
+
+    }
+
+    @Test
+    public void shouldKeepTransparencyAsPng() throws IOException {
+
+        BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(200, 30, 30));
+        g.fillOval(40, 40, 120, 120);
+        g.dispose();
+
+        FormatSelector.Selection selection = selector(28).select(image);
+        assertEquals("png", selection.getFormat());
+        BufferedImage result = write(selection);
+        assertTrue(result.getColorModel().hasAlpha());
+        assertEquals(0, result.getRGB(0, 0) >>> 24);
+        assertEquals(image.getRGB(100, 100), result.getRGB(100, 100));
+
+    }
+
+    @Test
+    public void shouldKeepTheAlphaNotInTheRowsAnalyzed() throws IOException {
+
+        // A photo with an opaque sample of rows, and a transparent row that is not analyzed
+        BufferedImage image = new BufferedImage(400, 256, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(42);
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 400; x++) {
+                image.setRGB(x, y, y == 255 ? 0 : 0xff000000 | random.nextInt(0x1000000));
+            }
+        }
+
+        FormatSelector.Selection selection = selector(28).select(image);
+        assertEquals("png", selection.getFormat());
+        BufferedImage result = write(selection);
+        assertTrue(result.getColorModel().hasAlpha());
+        assertEquals(0, result.getRGB(200, 255) >>> 24);
+
+    }
+
+    @Test
+    public void shouldDescribeTheBound() {
+
+        assertNotEquals(selector(28).describe(), selector(40).describe());
+        assertEquals(2, FormatSelector.candidates().size());
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidBound() {
+        selector(0);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.util.Map;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class IdempotencyIndexTest {
+
+    @Test
+    public void shouldClaimKeyOnlyOnceUntilReleased() {
+
+        IdempotencyIndex index = new IdempotencyIndex(10);
+
+        assertTrue(index.claim("in/a.jpg"));
+        assertFalse(index.claim("in/a.jpg"));
+        index.release("in/a.jpg");
+        assertTrue(index.claim("in/a.jpg"));
+
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedKey() {
+
+        IdempotencyIndex index = new IdempotencyIndex(2);
+
+        assertTrue(index.claim("a"));
+        assertTrue(index.claim("b"));
+        assertFalse(index.claim("a"));
+        assertTrue(index.claim("c"));
+
+        // b was the least recently used key
+        assertTrue(index.claim("b"));
+        assertFalse(index.claim("c"));
+
+    }
+
+    @Test
+    public void shouldNotRememberKeysWhenCacheIsDisabled() {
+
+        IdempotencyIndex index = new IdempotencyIndex(0);
+
+        assertTrue(index.claim("a"));
+        assertTrue(index.claim("a"));
+
+    }
+
+    @Test
+    public void shouldDependOnContentAndParameters() {
+
+        ObjectMetadata first = new ObjectMetadata(10, "image/jpeg", "etag-1", "md5", null);
+        ObjectMetadata uploadedAgain = new ObjectMetadata(10, "image/jpeg", "etag-2", "md5", null);
+        String hash = IdempotencyIndex.hash(IdempotencyIndex.fingerprint(first), "0.5:jpg:box");
+
+        assertEquals(hash, IdempotencyIndex.hash(IdempotencyIndex.fingerprint(uploadedAgain), "0.5:jpg:box"));
+        assertNotEquals(hash, IdempotencyIndex.hash(IdempotencyIndex.fingerprint(first), "0.5:png:box"));
+
+        ObjectMetadata rendition = new ObjectMetadata(5, "image/jpeg", "etag-3", "md5", Map.of(IdempotencyIndex.SOURCE_HASH, hash));
+        assertTrue(IdempotencyIndex.isCurrent(rendition, hash));
+        assertFalse(IdempotencyIndex.isCurrent(rendition, IdempotencyIndex.hash("md5:other", "0.5:jpg:box")));
+        assertFalse(IdempotencyIndex.isCurrent(null, hash));
+
+    }
+
+}
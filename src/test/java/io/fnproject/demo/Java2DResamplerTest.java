@@ -0,0 +1,77 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class Java2DResamplerTest {
+
+    @Test
+    public void shouldWriteSixteenBitGrayAsEightBits() throws IOException {
+
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_USHORT_GRAY);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0, 0x8080);
+            }
+        }
+
+        BufferedImage resized = Resampler.forName("java2d").resize(image, 16, 16);
+
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, resized.getType());
+        assertEquals(128, resized.getRaster().getSample(8, 8, 0));
+        EncoderPool pool = new EncoderPool(0.75f, false, false, "420", 4, "none", 1);
+        for (String format : new String[] { "jpg", "bmp", "png" }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+                pool.write(resized, format, out);
+            }
+            assertEquals(format, 16, ImageIO.read(new ByteArrayInputStream(bytes.toByteArray())).getWidth());
+        }
+
+    }
+
+    @Test
+    public void shouldDrawIndexedImagesAsRgb() {
+
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_BYTE_INDEXED);
+        assertEquals(BufferedImage.TYPE_INT_RGB, Resampler.forName("java2d").resize(image, 8, 8).getType());
+
+    }
+
+}
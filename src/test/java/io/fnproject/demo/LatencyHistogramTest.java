@@ -0,0 +1,76 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldMapValuesToContiguousBuckets() {
+
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value <= LatencyHistogram.upperBound(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.upperBound(bucket - 1));
+        }
+
+    }
+
+    @Test
+    public void shouldEstimatePercentilesWithinBucketError() {
+
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MINUTES.toNanos(5));
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(500000, histogram.percentile(50), 500000 * 0.13);
+        assertEquals(950000, histogram.percentile(95), 950000 * 0.13);
+        assertEquals(990000, histogram.percentile(99), 990000 * 0.13);
+
+    }
+
+    @Test
+    public void shouldForgetValuesOutsideTheWindow() throws Exception {
+
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MILLISECONDS.toNanos(20));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(1, histogram.count());
+
+        Thread.sleep(50);
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99));
+
+    }
+
+}
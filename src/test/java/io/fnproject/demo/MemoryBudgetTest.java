@@ -0,0 +1,94 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void shouldWaitForTheReleaseOfOtherImages() throws Exception {
+
+        MemoryBudget budget = new MemoryBudget(1000);
+        budget.reserve(500, 0);
+        budget.reserve(400, 0);
+
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                budget.reserve(300, TimeUnit.SECONDS.toNanos(10));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        budget.release(500);
+        waiting.get(10, TimeUnit.SECONDS);
+        assertEquals(700, budget.getReserved());
+
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldTimeOutWhenTheMemoryIsNotReleased() throws IOException {
+
+        MemoryBudget budget = new MemoryBudget(1000);
+        budget.reserve(500, 0);
+        budget.reserve(500, TimeUnit.MILLISECONDS.toNanos(50));
+        budget.reserve(1, TimeUnit.MILLISECONDS.toNanos(50));
+
+    }
+
+    @Test
+    public void shouldKeepHalfOfTheBudgetForTheDecodes() throws IOException {
+
+        MemoryBudget budget = new MemoryBudget(1000);
+        assertTrue(budget.tryReserveBuffer(300));
+        assertFalse(budget.tryReserveBuffer(300));
+        assertTrue(budget.tryReserveBuffer(200));
+
+        // The originals held while their images wait for memory never take the room of a decode
+        budget.reserve(500, 0);
+        assertFalse(budget.tryReserveBuffer(1));
+        budget.releaseBuffer(300);
+        budget.releaseBuffer(200);
+        assertEquals(500, budget.getReserved());
+
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectImagesOverHalfTheBudget() throws IOException {
+        new MemoryBudget(1000).reserve(501, TimeUnit.SECONDS.toNanos(10));
+    }
+
+}
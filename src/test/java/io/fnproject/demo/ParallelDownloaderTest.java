@@ -0,0 +1,126 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class ParallelDownloaderTest {
+
+    private static final int RANGE_SIZE = 1000;
+
+    private final InMemoryStorageService storage = new InMemoryStorageService();
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldDownloadOnlyLargeObjectsInParallel() {
+
+        ParallelDownloader downloader = new ParallelDownloader(storage, executor, 4 * RANGE_SIZE, 100 * RANGE_SIZE, RANGE_SIZE);
+
+        assertFalse(downloader.isParallel(-1));
+        assertFalse(downloader.isParallel(4 * RANGE_SIZE - 1));
+        assertTrue(downloader.isParallel(4 * RANGE_SIZE));
+        assertFalse(downloader.isParallel(100 * RANGE_SIZE + 1));
+
+    }
+
+    @Test
+    public void shouldDownloadAllRangesIntoBuffer() throws IOException {
+
+        ParallelDownloader downloader = new ParallelDownloader(storage, executor, 0, Long.MAX_VALUE, RANGE_SIZE);
+        byte[] content = new byte[25 * RANGE_SIZE + 7];
+        new Random(42).nextBytes(content);
+        storage.putBytes("in", "large.bin", content, null);
+
+        byte[] downloaded = downloader.download("in", "large.bin", content.length, storage.headObject("in", "large.bin").getETag());
+
+        assertArrayEquals(content, downloaded);
+
+    }
+
+    @Test
+    public void shouldDecodeDownloadedImageInPlace() throws IOException {
+
+        ParallelDownloader downloader = new ParallelDownloader(storage, executor, 0, Long.MAX_VALUE, RANGE_SIZE);
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(10, 20, 0x336699);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        storage.putBytes("in", "image.png", bytes.toByteArray(), "image/png");
+
+        byte[] downloaded = downloader.download("in", "image.png", bytes.size(), null);
+        BufferedImage decoded = ImageIO.read(new ByteArrayImageInputStream(downloaded));
+
+        assertEquals(200, decoded.getWidth());
+        assertEquals(0x336699, decoded.getRGB(10, 20) & 0xffffff);
+
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailWhenObjectChanges() throws IOException {
+
+        ParallelDownloader downloader = new ParallelDownloader(storage, executor, 0, Long.MAX_VALUE, RANGE_SIZE);
+        storage.putBytes("in", "large.bin", new byte[5 * RANGE_SIZE], null);
+        String eTag = storage.headObject("in", "large.bin").getETag();
+        storage.putBytes("in", "large.bin", new byte[5 * RANGE_SIZE], null);
+
+        downloader.download("in", "large.bin", 5 * RANGE_SIZE, eTag);
+
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailWhenRangeIsTruncated() throws IOException {
+
+        InMemoryStorageService truncating = new InMemoryStorageService() {
+            @Override
+            public InputStream getObject(String bucket, String objectName, long offset, long length, String eTag) {
+                return new ByteArrayInputStream(new byte[(int) length / 2]);
+            }
+        };
+        ParallelDownloader downloader = new ParallelDownloader(truncating, executor, 0, Long.MAX_VALUE, RANGE_SIZE);
+
+        downloader.download("in", "large.bin", 5 * RANGE_SIZE, null);
+
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class PreflightFilterTest {
+
+    private final InMemoryStorageService storage = new InMemoryStorageService();
+
+    private static ObjectStorageCloudEvent event(String eventType, String bucket, String objectName) {
+
+        ObjectStorageCloudEvent event = new ObjectStorageCloudEvent();
+        event.setEventType(eventType);
+        event.setData(Map.of("resourceName", objectName, "additionalDetails", Map.of("bucketName", bucket)));
+        return event;
+
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", bytes);
+        return bytes.toByteArray();
+
+    }
+
+    private ProcessingResult check(PreflightFilter filter, String objectName) throws IOException {
+        return filter.checkObject("in", objectName, storage.headObject("in", objectName));
+    }
+
+    @Test
+    public void shouldSkipIrrelevantEventsWithoutRequests() {
+
+        PreflightFilter filter = new PreflightFilter(storage, "in", name -> !name.startsWith("scaled-"), 0, 0);
+        String create = "com.oraclecloud.objectstorage.createobject";
+
+        assertNull(filter.checkEvent(event(create, "in", "a.jpg"), "a.jpg"));
+        assertNull(filter.checkEvent(event("com.oraclecloud.objectstorage.updateobject", "in", "a.jpg"), "a.jpg"));
+        assertEquals(ProcessingResult.Status.SKIPPED, filter.checkEvent(event("com.oraclecloud.objectstorage.deleteobject", "in", "a.jpg"), "a.jpg").getStatus());
+        assertEquals(ProcessingResult.Status.SKIPPED, filter.checkEvent(event(create, "other", "a.jpg"), "a.jpg").getStatus());
+        assertEquals(ProcessingResult.Status.SKIPPED, filter.checkEvent(event(create, "in", "photos/"), "photos/").getStatus());
+        assertEquals(ProcessingResult.Status.SKIPPED, filter.checkEvent(event(create, "in", "scaled-a.jpg"), "scaled-a.jpg").getStatus());
+
+    }
+
+    @Test
+    public void shouldRejectEmptyAndOversizedObjects() throws IOException {
+
+        PreflightFilter filter = new PreflightFilter(storage, "in", name -> true, 1000, 0);
+        storage.putBytes("in", "empty.jpg", new byte[0], "image/jpeg");
+        storage.putBytes("in", "large.jpg", new byte[1001], "image/jpeg");
+
+        assertEquals(ProcessingResult.Status.REJECTED, check(filter, "empty.jpg").getStatus());
+        assertEquals(ProcessingResult.Status.REJECTED, check(filter, "large.jpg").getStatus());
+
+    }
+
+    @Test
+    public void shouldSniffFormatWhenContentTypeIsNotAnImage() throws IOException {
+
+        PreflightFilter filter = new PreflightFilter(storage, "in", name -> true, 0, 0);
+        storage.putBytes("in", "notes.jpg", "not an image".getBytes(StandardCharsets.UTF_8), "application/octet-stream");
+        storage.putBytes("in", "image", png(64, 48), "application/octet-stream");
+        // A supported content type is trusted without reading the object
+        storage.putBytes("in", "labelled.jpg", "not an image".getBytes(StandardCharsets.UTF_8), "image/jpeg");
+
+        ProcessingResult rejected = check(filter, "notes.jpg");
+        assertEquals(ProcessingResult.Status.REJECTED, rejected.getStatus());
+        assertEquals("Unsupported image format", rejected.getMessage());
+        assertNull(check(filter, "image"));
+        assertNull(check(filter, "labelled.jpg"));
+
+    }
+
+    @Test
+    public void shouldRejectImagesLargerThanPixelLimit() throws IOException {
+
+        PreflightFilter filter = new PreflightFilter(storage, "in", name -> true, 0, 100 * 100);
+        storage.putBytes("in", "small.png", png(100, 100), "image/png");
+        storage.putBytes("in", "large.png", png(101, 100), "image/png");
+
+        assertNull(check(filter, "small.png"));
+        assertEquals(ProcessingResult.Status.REJECTED, check(filter, "large.png").getStatus());
+
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.Dimension;
+import java.util.List;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class RenditionTest {
+
+    @Test
+    public void shouldParseAndSortRenditions() {
+
+        List<Rendition> renditions = Rendition.parseList("64w, 0.5:large-:png,256w:medium-", "jpg");
+        Dimension source = new Dimension(2000, 1000);
+
+        assertEquals(3, renditions.size());
+        assertEquals("large-", renditions.get(0).getPrefix());
+        assertEquals("png", renditions.get(0).getFormat());
+        assertEquals(new Dimension(1000, 500), renditions.get(0).targetSize(source));
+        assertEquals("medium-", renditions.get(1).getPrefix());
+        assertEquals("jpg", renditions.get(1).getFormat());
+        assertEquals(new Dimension(256, 128), renditions.get(1).targetSize(source));
+        assertEquals("64w-", renditions.get(2).getPrefix());
+        assertEquals(new Dimension(64, 32), renditions.get(2).targetSize(source));
+
+    }
+
+    @Test
+    public void shouldSortRenditionsOnTheImage() {
+
+        List<Rendition> renditions = Rendition.parseList("300w:wide-,200h:tall-", "jpg");
+
+        // On a landscape image 300w is 300x150 and 200h is 400x200, on a portrait image 300x600 and 100x200
+        List<Rendition> landscape = Rendition.sortedBySize(renditions, new Dimension(2000, 1000));
+        assertEquals("tall-", landscape.get(0).getPrefix());
+        assertEquals("wide-", landscape.get(1).getPrefix());
+        List<Rendition> portrait = Rendition.sortedBySize(renditions, new Dimension(1000, 2000));
+        assertEquals("wide-", portrait.get(0).getPrefix());
+        assertEquals("tall-", portrait.get(1).getPrefix());
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectDuplicatePrefixes() {
+        Rendition.parseList("64w:small-,0.1:small-:png", "jpg");
+    }
+
+    @Test
+    public void shouldKeepAspectRatioForHeight() {
+        assertEquals(new Dimension(200, 100), Rendition.parse("100h", "jpg").targetSize(new Dimension(2000, 1000)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidSize() {
+        Rendition.parse("-64w", "jpg");
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class SeparableResamplerTest {
+
+    @Test
+    public void shouldAverageAreaWithBoxFilter() {
+
+        // Vertical stripes, one black and one white pixel, average to a uniform gray
+        BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, x % 2 == 0 ? 0x000000 : 0xffffff);
+            }
+        }
+
+        BufferedImage resized = new SeparableResampler(ResamplingFilter.BOX).resize(image, 100, 75);
+
+        assertEquals(100, resized.getWidth());
+        assertEquals(75, resized.getHeight());
+        for (int y = 0; y < resized.getHeight(); y++) {
+            for (int x = 0; x < resized.getWidth(); x++) {
+                assertEquals(0xff808080, resized.getRGB(x, y));
+            }
+        }
+
+    }
+
+    @Test
+    public void shouldKeepUniformColorWithEveryFilter() {
+
+        BufferedImage image = new BufferedImage(333, 251, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, 0x80204060);
+            }
+        }
+
+        for (ResamplingFilter filter : ResamplingFilter.values()) {
+            BufferedImage resized = new SeparableResampler(filter).resize(image, 50, 37);
+            assertEquals(filter.name(), BufferedImage.TYPE_INT_ARGB, resized.getType());
+            assertEquals(filter.name(), 0x80204060, resized.getRGB(25, 18));
+        }
+
+    }
+
+    @Test
+    public void shouldKeepGrayLayout() {
+
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage resized = new SeparableResampler(ResamplingFilter.LANCZOS).resize(image, 16, 16);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, resized.getType());
+
+    }
+
+    @Test
+    public void shouldFilterThreeByteImagesLikePackedRgb() {
+
+        BufferedImage packed = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = packed.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, 320, 240, Color.BLUE));
+        g.fillRect(0, 0, 320, 240);
+        g.dispose();
+        BufferedImage bgr = new BufferedImage(320, 240, BufferedImage.TYPE_3BYTE_BGR);
+        g = bgr.createGraphics();
+        g.drawImage(packed, 0, 0, null);
+        g.dispose();
+
+        for (ResamplingFilter filter : ResamplingFilter.values()) {
+            SeparableResampler resampler = new SeparableResampler(filter);
+            BufferedImage fromPacked = resampler.resize(packed, 57, 43);
+            BufferedImage fromBgr = resampler.resize(bgr, 57, 43);
+            assertEquals(filter.name(), BufferedImage.TYPE_3BYTE_BGR, fromBgr.getType());
+            for (int y = 0; y < 43; y++) {
+                for (int x = 0; x < 57; x++) {
+                    assertEquals(filter.name(), fromPacked.getRGB(x, y), fromBgr.getRGB(x, y));
+                }
+            }
+        }
+
+    }
+
+    @Test
+    public void shouldKeepAlphaOfInterleavedImages() {
+
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_4BYTE_ABGR);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, x < 100 ? 0x00000000 : 0xff2080c0);
+            }
+        }
+
+        BufferedImage resized = new SeparableResampler(ResamplingFilter.MITCHELL).resize(image, 50, 25);
+
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR, resized.getType());
+        assertEquals(0, resized.getRGB(5, 12) >>> 24);
+        assertEquals(0xff2080c0, resized.getRGB(45, 12));
+        // The transparent pixels do not darken the edge
+        assertEquals(0x2080c0, resized.getRGB(25, 12) & 0xffffff);
+
+    }
+
+    @Test
+    public void shouldReadIndexedImagesThroughPalette() {
+
+        BufferedImage indexed = new BufferedImage(100, 100, BufferedImage.TYPE_BYTE_INDEXED);
+        Graphics2D g = indexed.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 100, 100);
+        g.dispose();
+        BufferedImage binary = new BufferedImage(100, 100, BufferedImage.TYPE_BYTE_BINARY);
+        g = binary.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 100, 100);
+        g.dispose();
+
+        BufferedImage resizedIndexed = new SeparableResampler(ResamplingFilter.LANCZOS).resize(indexed, 30, 30);
+        BufferedImage resizedBinary = new SeparableResampler(ResamplingFilter.LANCZOS).resize(binary, 30, 30);
+
+        assertEquals(BufferedImage.TYPE_INT_RGB, resizedIndexed.getType());
+        assertEquals(0xffff0000, resizedIndexed.getRGB(15, 15));
+        // A black and white palette gives a gray image
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, resizedBinary.getType());
+        assertEquals(255, resizedBinary.getRaster().getSample(15, 15, 0));
+
+    }
+
+    @Test
+    public void shouldScaleSixteenBitSamplesToEightBits() {
+
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_USHORT_GRAY);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0, 0x8080);
+            }
+        }
+
+        BufferedImage resized = new SeparableResampler(ResamplingFilter.BILINEAR).resize(image, 16, 16);
+
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, resized.getType());
+        assertEquals(128, resized.getRaster().getSample(8, 8, 0));
+
+    }
+
+    @Test
+    public void shouldScaleBandsOnTheGivenExecutor() {
+
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, 800, 600, Color.BLUE));
+        g.fillRect(0, 0, 800, 600);
+        g.dispose();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BufferedImage parallel = new SeparableResampler(ResamplingFilter.LANCZOS, executor, 2).resize(image, 400, 300);
+            BufferedImage sequential = new SeparableResampler(ResamplingFilter.LANCZOS).resize(image, 400, 300);
+            for (int y = 0; y < 300; y++) {
+                for (int x = 0; x < 400; x++) {
+                    assertEquals(sequential.getRGB(x, y), parallel.getRGB(x, y));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+}
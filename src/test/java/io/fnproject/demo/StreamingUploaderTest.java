@@ -0,0 +1,141 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class StreamingUploaderTest {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    private final InMemoryStorageService storage = new InMemoryStorageService();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldUploadSmallObjectWithSinglePut() throws Exception {
+
+        StreamingUploader uploader = new StreamingUploader(storage, new ChunkPool(CHUNK_SIZE, 4), executor, 64 * CHUNK_SIZE, 8 * CHUNK_SIZE, 2);
+        byte[] content = randomBytes(5 * CHUNK_SIZE + 17);
+
+        long length = uploader.upload("out", "small.bin", "application/octet-stream", null, out -> out.write(content));
+
+        assertEquals(content.length, length);
+        assertArrayEquals(content, storage.getBytes("out", "small.bin"));
+        assertEquals("application/octet-stream", storage.headObject("out", "small.bin").getContentType());
+        assertEquals(0, storage.getPendingMultipartUploads());
+
+    }
+
+    @Test
+    public void shouldUploadLargeObjectInParts() throws Exception {
+
+        StreamingUploader uploader = new StreamingUploader(storage, new ChunkPool(CHUNK_SIZE, 4), executor, 8 * CHUNK_SIZE, 4 * CHUNK_SIZE, 2);
+        byte[] content = randomBytes(30 * CHUNK_SIZE + 5);
+
+        // Write a placeholder header, flush part of the content and then patch the header, as the image writers do
+        uploader.upload("out", "large.bin", null, null, out -> {
+            out.write(new byte[4]);
+            out.write(content, 4, 20 * CHUNK_SIZE);
+            out.seek(0);
+            out.write(content, 0, 4);
+            out.seek(4 + 20 * CHUNK_SIZE);
+            out.flushBefore(out.getStreamPosition());
+            out.write(content, 4 + 20 * CHUNK_SIZE, content.length - 4 - 20 * CHUNK_SIZE);
+        });
+
+        assertArrayEquals(content, storage.getBytes("out", "large.bin"));
+        assertEquals(0, storage.getPendingMultipartUploads());
+
+    }
+
+    @Test
+    public void shouldStreamEncodedImage() throws Exception {
+
+        StreamingUploader uploader = new StreamingUploader(storage, new ChunkPool(CHUNK_SIZE, 4), executor, 16 * CHUNK_SIZE, 8 * CHUNK_SIZE, 2);
+        BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", expected);
+
+        uploader.upload("out", "image.png", "image/png", null, out -> ImageIO.write(image, "png", out));
+
+        assertArrayEquals(expected.toByteArray(), storage.getBytes("out", "image.png"));
+
+    }
+
+    @Test
+    public void shouldAbortFailedMultipartUpload() {
+
+        StreamingUploader uploader = new StreamingUploader(storage, new ChunkPool(CHUNK_SIZE, 4), executor, 2 * CHUNK_SIZE, CHUNK_SIZE, 2);
+        byte[] content = randomBytes(8 * CHUNK_SIZE);
+
+        try {
+            uploader.upload("out", "broken.bin", null, null, out -> {
+                out.write(content);
+                out.flushBefore(out.getStreamPosition());
+                throw new IOException("Encoding failed");
+            });
+            fail("The upload should fail");
+        } catch (IOException e) {
+            assertEquals("Encoding failed", e.getMessage());
+        }
+
+        assertNull(storage.getBytes("out", "broken.bin"));
+        assertEquals(0, storage.getPendingMultipartUploads());
+
+    }
+
+    private static byte[] randomBytes(int length) {
+
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+
+    }
+
+}
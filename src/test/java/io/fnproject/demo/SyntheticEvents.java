@@ -0,0 +1,210 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2022-24 PaoloB
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package io.fnproject.demo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generator of the events of Object Storage for the images uploaded to a bucket. Each event uploads
+ * a new image to the storage, picked at random from a mix of sizes and formats, and returns the
+ * payload of its createobject event. The images of each size and format are generated once.
+ *
+ * @version 1.0 17 Oct 2026
+ * @author PaoloB
+ */
+public class SyntheticEvents {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final InMemoryStorageService storage;
+    private final String bucket;
+    private final List<String> mix = new ArrayList<>();
+    private final Map<String, byte[]> images = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final Random random;
+
+    /**
+     * Create a generator.
+     *
+     * @param storage storage where the images are uploaded
+     * @param bucket  bucket where the images are uploaded
+     * @param sizes   comma-separated sizes of the images, for example 640x480,1920x1080
+     * @param formats comma-separated formats of the images, for example jpg,png
+     * @param seed    seed of the choice of the images, so that a run can be repeated
+     */
+    public SyntheticEvents(InMemoryStorageService storage, String bucket, String sizes, String formats, long seed) {
+
+        this.storage = storage;
+        this.bucket = bucket;
+        this.random = new Random(seed);
+        for (String size : sizes.split(",")) {
+            for (String format : formats.split(",")) {
+                mix.add(format.trim().toLowerCase() + " " + size.trim());
+            }
+        }
+
+    }
+
+    /**
+     * Upload the next image and create its event.
+     *
+     * @return the event
+     */
+    public Event next() {
+
+        String kind;
+        synchronized (random) {
+            kind = mix.get(random.nextInt(mix.size()));
+        }
+        String format = kind.substring(0, kind.indexOf(' '));
+        String size = kind.substring(kind.indexOf(' ') + 1);
+        String objectName = String.format("synthetic/%06d-%s.%s", sequence.incrementAndGet(), size, format);
+
+        storage.putBytes(bucket, objectName, images.computeIfAbsent(kind, k -> encode(format, size)), "image/" + (format.equals("jpg") ? "jpeg" : format));
+        return new Event(objectName, kind, payload(objectName));
+
+    }
+
+    private String payload(String objectName) {
+
+        ObjectStorageCloudEvent event = new ObjectStorageCloudEvent();
+        event.setCloudEventsVersion("0.1");
+        event.setEventID(UUID.randomUUID().toString());
+        event.setEventType("com.oraclecloud.objectstorage.createobject");
+        event.setEventTypeVersion("2.0");
+        event.setEventTime(Instant.now().toString());
+        event.setContentType("application/json");
+        event.setSource("ObjectStorage");
+        event.setExtensions(Map.of("compartmentId", "ocid1.compartment.oc1..synthetic"));
+        event.setData(Map.of("compartmentId", "ocid1.compartment.oc1..synthetic",
+                             "compartmentName", "synthetic",
+                             "resourceName", objectName,
+                             "resourceId", "/n/" + ObjectStorageStandIn.NAMESPACE + "/b/" + bucket + "/o/" + objectName,
+                             "availabilityDomain", "AD1",
+                             "additionalDetails", Map.of("bucketName", bucket,
+                                                         "namespace", ObjectStorageStandIn.NAMESPACE,
+                                                         "archivalState", "Available")));
+        try {
+            return mapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+
+    }
+
+    /**
+     * Encode a photo-like image: smooth gradients, sharp edges and some noise.
+     */
+    private static byte[] encode(String format, String size) {
+
+        int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+        int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics2D = image.createGraphics();
+        graphics2D.setPaint(new GradientPaint(0, 0, new Color(30, 90, 160), width, height, new Color(240, 200, 120)));
+        graphics2D.fillRect(0, 0, width, height);
+        Random random = new Random(width * 31L + height);
+        graphics2D.setStroke(new BasicStroke(Math.max(1, width / 400f)));
+        for (int i = 0; i < 200; i++) {
+            graphics2D.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 160));
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            if (i % 2 == 0) {
+                graphics2D.fillOval(x, y, random.nextInt(width / 4) + 1, random.nextInt(height / 4) + 1);
+            } else {
+                graphics2D.drawRect(x, y, random.nextInt(width / 4) + 1, random.nextInt(height / 4) + 1);
+            }
+        }
+        graphics2D.dispose();
+        for (int y = 0; y < height; y += 2) {
+            for (int x = (y / 2) % 2; x < width; x += 2) {
+                image.setRGB(x, y, image.getRGB(x, y) ^ random.nextInt(8));
+            }
+        }
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            if (!ImageIO.write(image, format, out)) {
+                throw new IllegalArgumentException("No writer for the format " + format);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+    }
+
+    /**
+     * Event of an image uploaded by the generator.
+     */
+    public static class Event {
+
+        private final String objectName;
+        private final String kind;
+        private final String payload;
+
+        Event(String objectName, String kind, String payload) {
+            this.objectName = objectName;
+            this.kind = kind;
+            this.payload = payload;
+        }
+
+        public String getObjectName() {
+            return objectName;
+        }
+
+        /** Format and size of the image, for example "jpg 1920x1080". */
+        public String getKind() {
+            return kind;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+    }
+
+}
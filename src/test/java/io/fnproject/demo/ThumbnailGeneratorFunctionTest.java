@@ -27,6 +27,9 @@
  package io.fnproject.demo;
 
 import com.fnproject.fn.testing.*;
+
+import java.util.concurrent.TimeUnit;
+
 import org.junit.*;
 
 import static org.junit.Assert.*;
@@ -36,10 +39,105 @@ public class ThumbnailGeneratorFunctionTest {
     @Rule
     public final FnTestingRule testing = FnTestingRule.createDefault();
 
+    private ObjectStorageStandIn objectStorage;
+    private SyntheticEvents events;
+
+    @Before
+    public void setUp() throws Exception {
+
+        objectStorage = new ObjectStorageStandIn();
+        objectStorage.configure(testing);
+        testing.setConfig("BUCKET_IN", "imageIn");
+        testing.setConfig("BUCKET_OUT", "imageOut");
+        events = new SyntheticEvents(objectStorage.getStorage(), "imageIn", "640x480", "jpg", 42);
+
+    }
+
+    @After
+    public void tearDown() {
+        objectStorage.close();
+    }
+
     @Test
-    public void shouldReturnSomething() {
-        // TODO: implement some kind of testing here...
-        assertTrue(true);
+    public void shouldGenerateThumbnailAndArchiveOriginal() {
+
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals("Thumbnail generation completed, please see the output in bucket imageOut", testing.getOnlyResult().getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageOut", "scaled-" + event.getObjectName()));
+        assertNotNull(objectStorage.getStorage().headObject("imageOut", event.getObjectName()));
+        assertNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldProcessOriginalsNamedLikeRenditionsInAnotherBucket() {
+
+        // The renditions are written to imageOut, so the names of imageIn that start with their prefix are originals
+        testing.setConfig("NAME_PREFIX", "synthetic/");
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals("Thumbnail generation completed, please see the output in bucket imageOut", testing.getOnlyResult().getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageOut", "synthetic/" + event.getObjectName()));
+        assertNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldProcessBatchWithServerSideCopies() {
+
+        testing.setConfig("ARCHIVE_STRATEGY", "copy");
+        String batch = "[" + events.next().getPayload() + "," + events.next().getPayload() + "," + events.next().getPayload() + "]";
+        testing.givenEvent().withBody(batch).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertTrue(testing.getOnlyResult().getBodyAsString().contains("\"processed\":3"));
+        assertEquals(6, objectStorage.getStorage().listObjects("imageOut", null, null, 100).getObjectNames().size());
+        assertTrue(objectStorage.getStorage().listObjects("imageIn", null, null, 100).getObjectNames().isEmpty());
+
+    }
+
+    @Test
+    public void shouldReportFailedArchiveOfSingleEvent() {
+
+        testing.setConfig("ARCHIVE_STRATEGY", "copy");
+        objectStorage.setFailingCopies(true);
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        // The original is left in place, to be processed again when the event is delivered again
+        assertEquals(ThumbnailGeneratorFunction.ERRORMSG, testing.getOnlyResult().getBodyAsString());
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+        assertNull(objectStorage.getStorage().headObject("imageOut", event.getObjectName()));
+
+    }
+
+    @Test
+    public void shouldStopWaitingForCopiesBeforeTheTimeout() {
+
+        // The copy is waited for until 5 seconds before the timeout of the function
+        testing.setConfig("ARCHIVE_STRATEGY", "copy");
+        testing.setConfig("FUNCTION_TIMEOUT_SECONDS", "7");
+        objectStorage.setStalledCopies(true);
+        SyntheticEvents.Event event = events.next();
+        testing.givenEvent().withBody(event.getPayload()).enqueue();
+
+        long start = System.nanoTime();
+        testing.thenRun(ThumbnailGeneratorFunction.class, "handleRequest");
+
+        assertEquals(ThumbnailGeneratorFunction.ERRORMSG, testing.getOnlyResult().getBodyAsString());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(7));
+        assertNotNull(objectStorage.getStorage().headObject("imageIn", event.getObjectName()));
+
     }
 
-}
\ No newline at end of file
+}